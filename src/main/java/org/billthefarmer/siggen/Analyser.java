@@ -0,0 +1,221 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Analyser
+//
+// Streaming Goertzel analyser for a test tone. Each block of samples
+// is Hann windowed and run through a Goertzel filter at the expected
+// frequency and each of its harmonics, which costs one multiply-add
+// per harmonic per sample. At the end of each block it reports the
+// level of the fundamental, the THD from the harmonics, and the
+// measured frequency from the phase advance since the last block,
+// which is exact within +/- rate / (2 * length) of the expected
+// frequency. The filters are then retuned to the measured frequency,
+// so the level and THD don't suffer from the window scalloping.
+// Everything is allocated up front.
+public class Analyser
+{
+    // Fundamental and harmonics
+    protected static final int HARMONICS = 5;
+
+    private final double rate;
+    private final int length;
+    private final Listener listener;
+
+    private final float window[];
+    private final double gain;
+
+    // Goertzel state and coefficients for each harmonic
+    private final double s1[] = new double[HARMONICS];
+    private final double s2[] = new double[HARMONICS];
+    private final double coeffs[] = new double[HARMONICS];
+    private final double cosines[] = new double[HARMONICS];
+    private final double sines[] = new double[HARMONICS];
+    private final double amplitudes[] = new double[HARMONICS];
+
+    private int count;
+    private int index;
+
+    // Expected frequency, set from any thread and picked up at the
+    // start of a block
+    private volatile double expected;
+    private double target;
+    private double frequency;
+
+    // Phase of the last block, NaN if none
+    private double phase = Double.NaN;
+    private double measured;
+
+    // Analyser
+    public Analyser(double rate, int length, Listener listener)
+    {
+        this.rate = rate;
+        this.length = length;
+        this.listener = listener;
+
+        window = new float[length];
+
+        double sum = 0.0;
+        for (int i = 0; i < length; i++)
+        {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i /
+                                                      length));
+            sum += window[i];
+        }
+
+        // Amplitude of a sine wave from the magnitude
+        gain = 2.0 / sum;
+    }
+
+    // Set frequency
+    protected void setFrequency(double f)
+    {
+        expected = f;
+    }
+
+    // Process samples, which may be any number
+    protected void process(float samples[], int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            if (index == 0)
+                begin();
+
+            double x = samples[i] * window[index];
+
+            for (int h = 0; h < count; h++)
+            {
+                double s = x + coeffs[h] * s1[h] - s2[h];
+                s2[h] = s1[h];
+                s1[h] = s;
+            }
+
+            if (++index == length)
+            {
+                end();
+                index = 0;
+            }
+        }
+    }
+
+    // Begin a block
+    private void begin()
+    {
+        double f = expected;
+
+        // New frequency
+        if (f != target)
+        {
+            target = f;
+            tune(f);
+        }
+
+        // Follow the measured frequency if it is more than a hundredth
+        // of a bin away
+        else if (!Double.isNaN(phase) &&
+                 Math.abs(measured - frequency) > rate / length / 100.0)
+            tune(measured);
+
+        for (int h = 0; h < count; h++)
+        {
+            s1[h] = 0.0;
+            s2[h] = 0.0;
+        }
+    }
+
+    // Tune, recalculate the coefficients
+    private void tune(double f)
+    {
+        frequency = f;
+        phase = Double.NaN;
+
+        count = 0;
+        for (int h = 0; h < HARMONICS; h++)
+        {
+            double w = 2.0 * Math.PI * f * (h + 1) / rate;
+            if (w >= Math.PI)
+                break;
+
+            cosines[h] = Math.cos(w);
+            sines[h] = Math.sin(w);
+            coeffs[h] = 2.0 * cosines[h];
+            count++;
+        }
+    }
+
+    // End a block
+    private void end()
+    {
+        if (count == 0)
+            return;
+
+        for (int h = 0; h < count; h++)
+        {
+            double re = s1[h] - s2[h] * cosines[h];
+            double im = s2[h] * sines[h];
+            amplitudes[h] = Math.hypot(re, im) * gain;
+
+            // Phase of the fundamental
+            if (h == 0)
+            {
+                double last = phase;
+                phase = Math.atan2(im, re);
+
+                // Phase advance against the expected advance
+                if (!Double.isNaN(last))
+                {
+                    double advance = 2.0 * Math.PI * frequency * length / rate;
+                    measured = frequency + wrap(phase - last - advance) *
+                        rate / (2.0 * Math.PI * length);
+                }
+
+                else
+                    measured = frequency;
+            }
+        }
+
+        double sum = 0.0;
+        for (int h = 1; h < count; h++)
+            sum += amplitudes[h] * amplitudes[h];
+
+        double level = 20.0 * Math.log10(amplitudes[0]);
+        double thd = (amplitudes[0] > 0.0)? Math.sqrt(sum) / amplitudes[0]:
+            Double.NaN;
+
+        listener.onResult(measured, level, thd);
+    }
+
+    // Wrap a phase into -PI to PI
+    private static double wrap(double p)
+    {
+        return Math.IEEEremainder(p, 2.0 * Math.PI);
+    }
+
+    // Listener, called on the thread that processes the samples
+    public interface Listener
+    {
+        void onResult(double frequency, double level, double thd);
+    }
+}
@@ -0,0 +1,79 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// AnalyserBenchmark
+//
+// Times the analyser on the harmonic fixture from AnalyserCheck, read
+// back from a WAV file, in analysis blocks per second, and how many
+// times faster than real time that is.
+public class AnalyserBenchmark
+{
+    // Main
+    public static void main(String args[]) throws IOException
+    {
+        File file = File.createTempFile("harmonic", ".wav");
+        float samples[];
+
+        try
+        {
+            AnalyserCheck.harmonic(file, AnalyserCheck.HARMONIC);
+            samples = AnalyserCheck.read(file);
+        }
+
+        finally
+        {
+            file.delete();
+        }
+
+        int length = AnalyserCheck.RATE / AnalyserCheck.BLOCKS;
+        int blocks = samples.length / length;
+        int next[] = {0};
+
+        Analyser analyser =
+            new Analyser(AnalyserCheck.RATE, length, (f, l, t) -> {});
+        analyser.setFrequency(AnalyserCheck.EXPECTED);
+
+        // A block a call, through the fixture and round again
+        float block[] = new float[length];
+        double rate = Benchmark.time("Analyser", length, n ->
+        {
+            System.arraycopy(samples, next[0] * length, block, 0, length);
+            next[0] = (next[0] + 1) % blocks;
+
+            analyser.process(block, length);
+            return block[0];
+        });
+
+        System.out.println(String.format(Locale.ROOT,
+                                         "%-24s %8.0f blocks/s %6.0fx " +
+                                         "real time", "Analyser",
+                                         rate / length,
+                                         rate / AnalyserCheck.RATE));
+    }
+}
@@ -0,0 +1,177 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// AnalyserCheck
+//
+// Checks the analyser against WAV fixtures. A tone is rendered by
+// Render, and a tone with a known third harmonic written directly, as
+// 16 bit WAV files. Each is read back and analysed expecting the
+// nearest test frequency, so the analyser has to find the tone. After
+// the first blocks, while the gate opens and the analyser locks on,
+// every result must be within the tolerances. Exits non-zero on
+// failure.
+public class AnalyserCheck
+{
+    protected static final int RATE = 48000;
+
+    // Analysis blocks per second, as the loopback
+    protected static final int BLOCKS = 10;
+
+    // Fixture, tone and level in dB re full scale, expected frequency
+    protected static final double FREQUENCY = 1002.5;
+    protected static final double LEVEL = -20.0;
+    protected static final double EXPECTED = 1000.0;
+
+    // Third harmonic
+    protected static final double HARMONIC = 0.01;
+
+    protected static final double SECONDS = 2.0;
+
+    // Blocks skipped
+    private static final int SETTLE = 3;
+
+    // Tolerances, in Hz, dB and THD as a fraction
+    private static final double FREQUENCY_TOLERANCE = 0.05;
+    private static final double LEVEL_TOLERANCE = 0.05;
+    private static final double THD_TOLERANCE = 0.0005;
+
+    // Main
+    public static void main(String args[]) throws IOException
+    {
+        File tone = File.createTempFile("tone", ".wav");
+        File harmonic = File.createTempFile("harmonic", ".wav");
+        boolean pass = true;
+
+        try
+        {
+            render(tone);
+            harmonic(harmonic, HARMONIC);
+
+            pass &= check("Tone", tone, 0.0);
+            pass &= check("Harmonic", harmonic, HARMONIC);
+        }
+
+        finally
+        {
+            tone.delete();
+            harmonic.delete();
+        }
+
+        System.exit(pass? 0: 1);
+    }
+
+    // Render the tone fixture
+    protected static void render(File file) throws IOException
+    {
+        try (WavWriter writer = new WavWriter(file, RATE, 2, false))
+        {
+            Render render = new Render(RATE, writer, p -> {});
+            render.tone(FREQUENCY, LEVEL, SECONDS);
+        }
+    }
+
+    // Write the fixture with a third harmonic, mono
+    protected static void harmonic(File file, double h) throws IOException
+    {
+        double a = Math.pow(10.0, LEVEL / 20.0);
+        float buffer[] = new float[RATE / BLOCKS];
+
+        try (WavWriter writer = new WavWriter(file, RATE, 1, false))
+        {
+            long frame = 0;
+            for (int b = 0; b < SECONDS * BLOCKS; b++)
+            {
+                for (int i = 0; i < buffer.length; i++, frame++)
+                {
+                    double q = 2.0 * Math.PI * FREQUENCY * frame / RATE;
+                    buffer[i] = (float) (a * (Math.sin(q) +
+                                              h * Math.sin(3.0 * q)));
+                }
+
+                writer.write(buffer, buffer.length);
+            }
+        }
+    }
+
+    // Read the first channel of a fixture
+    protected static float[] read(File file) throws IOException
+    {
+        try (WavReader reader = new WavReader(file))
+        {
+            int c = reader.getChannels();
+            float frames[] = new float[(int) reader.getFrames() * c];
+            int n = reader.read(frames, frames.length / c);
+
+            float samples[] = new float[n];
+            for (int i = 0; i < n; i++)
+                samples[i] = frames[i * c];
+
+            return samples;
+        }
+    }
+
+    // Check a fixture
+    private static boolean check(String name, File file, double thd)
+        throws IOException
+    {
+        float samples[] = read(file);
+        boolean pass[] = {true};
+        int count[] = {0};
+
+        Analyser analyser = new Analyser(RATE, RATE / BLOCKS, (f, l, t) ->
+        {
+            if (count[0]++ < SETTLE)
+                return;
+
+            boolean ok = Math.abs(f - FREQUENCY) <= FREQUENCY_TOLERANCE &&
+                Math.abs(l - LEVEL) <= LEVEL_TOLERANCE &&
+                Math.abs(t - thd) <= THD_TOLERANCE;
+
+            if (!ok)
+                System.out.println(String.format(Locale.ROOT,
+                                                 "%s block %d: %.3fHz " +
+                                                 "%.3fdB THD %.4f%%",
+                                                 name, count[0] - 1, f, l,
+                                                 t * 100.0));
+            pass[0] &= ok;
+        });
+
+        analyser.setFrequency(EXPECTED);
+        analyser.process(samples, samples.length);
+
+        boolean ok = pass[0] && count[0] > SETTLE;
+        System.out.println(String.format(Locale.ROOT,
+                                         "%-8s %.1fHz %.1fdB THD %.1f%%, " +
+                                         "%d blocks %s",
+                                         name, FREQUENCY, LEVEL, thd * 100.0,
+                                         count[0] - SETTLE,
+                                         ok? "pass": "FAIL"));
+        return ok;
+    }
+}
@@ -0,0 +1,802 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Audio
+public class Audio implements Runnable
+{
+    private static final String TAG = "Audio";
+
+    protected static final int SINE = Wavetable.SINE;
+    protected static final int SQUARE = Wavetable.SQUARE;
+    protected static final int SAWTOOTH = Wavetable.SAWTOOTH;
+    protected static final int TRIANGLE = Wavetable.TRIANGLE;
+    protected static final int PULSE = Wavetable.PULSE;
+
+    // Time to wait for the audio thread to exit
+    protected static final long JOIN = 1000;
+
+    // Channel routing
+    protected static final int BOTH = Generator.BOTH;
+    protected static final int LEFT = Generator.LEFT;
+    protected static final int RIGHT = Generator.RIGHT;
+
+    // Output formats
+    protected static final int OUTPUT_SHORT = 0;
+    protected static final int OUTPUT_DITHER = 1;
+    protected static final int OUTPUT_FLOAT = 2;
+
+    // Event types
+    protected static final int TONE_ON = Scheduler.TONE_ON;
+    protected static final int TONE_OFF = Scheduler.TONE_OFF;
+    protected static final int LEVEL = Scheduler.LEVEL;
+    protected static final int FREQUENCY = Scheduler.FREQUENCY;
+    protected static final int TONE_CLOSE = Scheduler.TONE_CLOSE;
+
+    // Use the device burst size and a low latency track
+    protected boolean lowLatency;
+
+    // Output format, selected when the engine starts
+    protected int output;
+
+    // Called on the audio thread when the first buffer is written,
+    // set on the UI thread
+    protected volatile Runnable onFirstSample;
+
+    private final Context context;
+    private int rate;
+
+    // The audio thread, kept after stop() until it has exited, as it
+    // owns its track and advances the position
+    private volatile Thread thread;
+
+    private final Object lock = new Object();
+    private final Object clock = new Object();
+
+    private volatile boolean running;
+    private volatile boolean paused;
+
+    private volatile double latency;
+    private volatile long position;
+    private int underruns;
+
+    // Render timing in ns, buffers rendered and buffers that took
+    // longer than they last
+    private volatile long deadline;
+    private volatile long worst;
+    private volatile long buffers;
+    private volatile long late;
+
+    // Parameters, published by the UI and read by the audio
+    // thread once per block
+    private final AtomicReference<Params> params =
+        new AtomicReference<>(new Params());
+
+    // Waveform asked for, which may still be waiting for its tables
+    private volatile int waveform = params.get().waveform;
+
+    // Events, posted by any thread and applied on their frame
+    private final Scheduler scheduler = new Scheduler();
+
+    // Audio, which doesn't touch the audio system until it is used,
+    // so it can be created before the first frame is drawn
+    public Audio(Context context)
+    {
+        this.context = context;
+    }
+
+    // Start
+    protected void start()
+    {
+        // A thread that has exited, because the track failed, can be
+        // started again
+        if (isRunning())
+            return;
+
+        // One that stop() gave up waiting for has to exit first
+        Thread t = thread;
+        if (t != null && !join(t))
+        {
+            Log.d(TAG, "Start: audio thread still running");
+            return;
+        }
+
+        running = true;
+        paused = false;
+
+        thread = new Thread(this, "Audio");
+        thread.start();
+    }
+
+    // Is running
+    protected boolean isRunning()
+    {
+        Thread t = thread;
+        return t != null && t.isAlive() && running;
+    }
+
+    // Pause, the audio track is paused but kept
+    protected void pause()
+    {
+        paused = true;
+    }
+
+    // Resume
+    protected void resume()
+    {
+        synchronized (lock)
+        {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    // Is paused
+    protected boolean isPaused()
+    {
+        return paused;
+    }
+
+    // Stop
+    protected void stop()
+    {
+        Thread t = thread;
+        if (t == null)
+            return;
+
+        synchronized (lock)
+        {
+            running = false;
+            lock.notifyAll();
+        }
+
+        synchronized (clock)
+        {
+            clock.notifyAll();
+        }
+
+        // Wait for the thread to exit, it will be blocked in
+        // write() for at most one buffer
+        join(t);
+    }
+
+    // Join, returns true if the thread has exited
+    private boolean join(Thread t)
+    {
+        try
+        {
+            t.join(JOIN);
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return !t.isAlive();
+    }
+
+    // Get params
+    protected Params getParams()
+    {
+        return params.get();
+    }
+
+    // Get waveform
+    protected int getWaveform()
+    {
+        return waveform;
+    }
+
+    // Set waveform. The tables are built on a background thread,
+    // and the change is published once they are, so the audio
+    // thread never sees a waveform without tables. A later change
+    // wins over one still building.
+    protected void setWaveform(int w)
+    {
+        waveform = w;
+
+        if (Wavetable.hasTables(w))
+        {
+            Params.update(params, p -> p.waveform = w);
+            return;
+        }
+
+        Thread t = new Thread(() ->
+        {
+            Wavetable.getTables(w);
+            Params.update(params, p ->
+            {
+                if (waveform == w)
+                    p.waveform = w;
+            });
+        }, "Wavetable");
+        t.start();
+    }
+
+    // Is mute
+    protected boolean isMute()
+    {
+        return params.get().mute;
+    }
+
+    // Set mute
+    protected void setMute(boolean m)
+    {
+        Params.update(params, p -> p.mute = m);
+    }
+
+    // Get frequency
+    protected double getFrequency()
+    {
+        return params.get().frequency;
+    }
+
+    // Set frequency
+    protected void setFrequency(double f)
+    {
+        Params.update(params, p -> p.frequency = f);
+    }
+
+    // Set level, relative to 0dB HL
+    protected void setLevel(double l)
+    {
+        Params.update(params, p -> p.level = l);
+    }
+
+    // Get calibration
+    protected Calibration getCalibration()
+    {
+        return params.get().calibration;
+    }
+
+    // Set calibration, switching profiles takes effect at the next
+    // block
+    protected void setCalibration(Calibration c)
+    {
+        Params.update(params, p -> p.calibration = c);
+    }
+
+    // Get noise
+    protected int getNoise()
+    {
+        return params.get().noise;
+    }
+
+    // Set noise
+    protected void setNoise(int n)
+    {
+        Params.update(params, p -> p.noise = n);
+    }
+
+    // Get ear
+    protected int getEar()
+    {
+        return params.get().ear;
+    }
+
+    // Set ear for the tone
+    protected void setEar(int e)
+    {
+        Params.update(params, p -> p.ear = e);
+    }
+
+    // Get noise ear
+    protected int getNoiseEar()
+    {
+        return params.get().noiseEar;
+    }
+
+    // Set ear for the noise
+    protected void setNoiseEar(int e)
+    {
+        Params.update(params, p -> p.noiseEar = e);
+    }
+
+    // Set channel level
+    protected void setChannelLevel(int channel, double l)
+    {
+        Params.update(params, p ->
+        {
+            if (channel == LEFT)
+                p.left = l;
+
+            else
+                p.right = l;
+        });
+    }
+
+    // Set channel mute
+    protected void setChannelMute(int channel, boolean m)
+    {
+        Params.update(params, p ->
+        {
+            if (channel == LEFT)
+                p.muteLeft = m;
+
+            else
+                p.muteRight = m;
+        });
+    }
+
+    // Get noise level
+    protected double getNoiseLevel()
+    {
+        return params.get().noiseLevel;
+    }
+
+    // Set noise level
+    protected void setNoiseLevel(double l)
+    {
+        Params.update(params, p -> p.noiseLevel = l);
+    }
+
+    // Is warble
+    protected boolean isWarble()
+    {
+        return params.get().warble;
+    }
+
+    // Set warble
+    protected void setWarble(boolean w)
+    {
+        Params.update(params, p -> p.warble = w);
+    }
+
+    // Set warble rate in Hz and depth as a fraction of the frequency
+    protected void setWarbleRate(double r, double d)
+    {
+        Params.update(params, p ->
+        {
+            p.warbleRate = r;
+            p.warbleDepth = d;
+        });
+    }
+
+    // Set tone gate rise and fall time in ms
+    protected void setRise(double ms)
+    {
+        Params.update(params, p -> p.rise = ms);
+    }
+
+    // Set glide time in ms, zero for the default
+    protected void setGlide(double ms)
+    {
+        Params.update(params, p -> p.glide = ms);
+    }
+
+    // Schedule an event at a frame position, returns false if the
+    // queue is full. Late events are applied at the next block.
+    protected boolean schedule(long frame, int type, double value)
+    {
+        return scheduler.post(frame, type, value);
+    }
+
+    // Schedule an event with no value
+    protected boolean schedule(long frame, int type)
+    {
+        return scheduler.post(frame, type);
+    }
+
+    // Schedule count tone pulses, on and off in frames
+    protected boolean pulse(long frame, long on, long off, int count)
+    {
+        return scheduler.pulse(frame, on, off, count);
+    }
+
+    public void run()
+    {
+        // Ahead of the UI and the garbage collector
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            logExclusiveCores();
+
+        try
+        {
+            processAudio();
+        }
+
+        // The track may have failed, so stop anything waiting on the
+        // clock. A new thread can't start until this one has exited.
+        finally
+        {
+            synchronized (clock)
+            {
+                running = false;
+                clock.notifyAll();
+            }
+        }
+
+        Log.d(TAG, String.format(Locale.ROOT,
+                                 "Render: worst %.3fms of %.3fms, " +
+                                 "%d late of %d", worst / 1e6,
+                                 deadline / 1e6, late, buffers));
+    }
+
+    // Process audio
+    protected void processAudio()
+    {
+        int rate = getRate();
+
+        // Build the tables before the track starts
+        Wavetable.getTables(params.get().waveform);
+
+        // Float needs Android 5
+        int out = output;
+        if (out == OUTPUT_FLOAT &&
+            Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+            out = OUTPUT_DITHER;
+
+        int encoding = (out == OUTPUT_FLOAT)?
+            AudioFormat.ENCODING_PCM_FLOAT:
+            AudioFormat.ENCODING_PCM_16BIT;
+        int frameSize = (out == OUTPUT_FLOAT)? 4 * 2: 2 * 2;
+
+        int minSize =
+            AudioTrack.getMinBufferSize(rate,
+                                        AudioFormat.CHANNEL_OUT_STEREO,
+                                        encoding);
+
+        int burst = lowLatency ? getFramesPerBurst() : 0;
+        int size = 0;
+        int frames;
+
+        if (burst > 0)
+        {
+            // Start with two bursts, and write one at a time
+            size = Math.max(minSize, burst * 2 * frameSize);
+            frames = burst;
+        }
+
+        else
+        {
+            // Find a suitable buffer size
+            int sizes[] = {1024, 2048, 4096, 8192, 16384, 32768, 65536};
+
+            for (int s : sizes)
+            {
+                if (s > minSize)
+                {
+                    size = s;
+                    break;
+                }
+            }
+
+            // Size is in bytes, write half the track at a time
+            frames = size / frameSize / 2;
+        }
+
+        // Create the generator, on the same clock as the position
+        Generator generator = new Generator(rate, params, scheduler);
+        generator.setFrame(position);
+
+        // Create the audio track
+        AudioTrack audioTrack = createAudioTrack(size, encoding);
+        // Check audioTrack
+
+        // Check state
+        int state = audioTrack.getState();
+
+        if (state != AudioTrack.STATE_INITIALIZED)
+        {
+            audioTrack.release();
+            return;
+        }
+
+        audioTrack.play();
+
+        // Report the latency
+        underruns = 0;
+        updateLatency(audioTrack, size / frameSize);
+
+        // Create the buffers
+        short shorts[] =
+            (out == OUTPUT_FLOAT)? null: new short[frames * 2];
+        float floats[] = new float[frames * 2];
+
+        Xorshift random = new Xorshift((int) System.nanoTime());
+
+        // Each buffer has to be rendered in less time than it plays
+        deadline = frames * 1000000000L / rate;
+        worst = 0;
+        buffers = 0;
+        late = 0;
+
+        while (running)
+        {
+            // Wait while paused
+            if (paused)
+            {
+                audioTrack.pause();
+                audioTrack.flush();
+
+                if (!waitForResume())
+                    break;
+
+                // Fade back in
+                generator.reset();
+                audioTrack.play();
+            }
+
+            // Render the buffer, events fall on their frame
+            long start = System.nanoTime();
+            generator.render(floats, frames);
+
+            // Convert
+            switch (out)
+            {
+            case OUTPUT_SHORT:
+                Pcm.toShort(floats, shorts);
+                break;
+
+            case OUTPUT_DITHER:
+                Pcm.toDither(floats, shorts, random);
+                break;
+            }
+
+            // Render time, not counting the wait in write()
+            long time = System.nanoTime() - start;
+            if (time > worst)
+                worst = time;
+
+            if (time > deadline)
+                late++;
+
+            buffers++;
+
+            if (out == OUTPUT_FLOAT)
+                writeFloat(audioTrack, floats);
+
+            else
+                audioTrack.write(shorts, 0, shorts.length);
+
+            Runnable first = onFirstSample;
+            if (position == 0 && first != null)
+                first.run();
+
+            // Advance the clock
+            position += frames;
+            synchronized (clock)
+            {
+                clock.notifyAll();
+            }
+
+            // Grow the buffer if it underran
+            if (burst > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+                adjustBuffer(audioTrack, burst);
+        }
+
+        audioTrack.stop();
+        audioTrack.release();
+    }
+
+    // Write float
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void writeFloat(AudioTrack audioTrack, float buffer[])
+    {
+        audioTrack.write(buffer, 0, buffer.length,
+                         AudioTrack.WRITE_BLOCKING);
+    }
+
+    // Get frames per burst, zero if unknown
+    private int getFramesPerBurst()
+    {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1)
+            return 0;
+
+        AudioManager manager = (AudioManager)
+            context.getSystemService(Context.AUDIO_SERVICE);
+        String frames = manager.getProperty
+            (AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER);
+
+        try
+        {
+            return Integer.parseInt(frames);
+        }
+
+        catch (Exception e)
+        {
+            return 0;
+        }
+    }
+
+    // Create audio track, using a low latency track if available
+    @SuppressWarnings("deprecation")
+    private AudioTrack createAudioTrack(int size, int encoding)
+    {
+        if (lowLatency && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+        {
+            try
+            {
+                AudioAttributes attributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+                AudioFormat format = new AudioFormat.Builder()
+                    .setSampleRate(rate)
+                    .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                    .setEncoding(encoding)
+                    .build();
+
+                return new AudioTrack.Builder()
+                    .setAudioAttributes(attributes)
+                    .setAudioFormat(format)
+                    .setBufferSizeInBytes(size)
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setPerformanceMode(AudioTrack
+                                        .PERFORMANCE_MODE_LOW_LATENCY)
+                    .build();
+            }
+
+            catch (Exception e)
+            {
+                Log.d(TAG, "Low latency track: " + e);
+            }
+        }
+
+        return new AudioTrack(AudioManager.STREAM_MUSIC, rate,
+                              AudioFormat.CHANNEL_OUT_STEREO, encoding,
+                              size, AudioTrack.MODE_STREAM);
+    }
+
+    // Adjust buffer, add a burst each time the track underruns
+    @TargetApi(Build.VERSION_CODES.N)
+    private void adjustBuffer(AudioTrack audioTrack, int burst)
+    {
+        int count = audioTrack.getUnderrunCount();
+        if (count <= underruns)
+            return;
+
+        underruns = count;
+        int frames = audioTrack.getBufferSizeInFrames() + burst;
+
+        if (frames <= audioTrack.getBufferCapacityInFrames())
+            audioTrack.setBufferSizeInFrames(frames);
+
+        updateLatency(audioTrack, frames);
+    }
+
+    // Update latency from the frames the track will buffer
+    private void updateLatency(AudioTrack audioTrack, int frames)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            frames = audioTrack.getBufferSizeInFrames();
+
+        latency = frames * 1000.0 / rate;
+        Log.d(TAG, "Latency: " + latency + "ms, underruns: " + underruns);
+    }
+
+    // Get worst render time for a buffer in ms since the engine
+    // started
+    protected double getWorstRenderTime()
+    {
+        return worst / 1e6;
+    }
+
+    // Get render deadline for a buffer in ms, the time it plays for
+    protected double getRenderDeadline()
+    {
+        return deadline / 1e6;
+    }
+
+    // Get number of buffers that took longer to render than they play
+    protected long getLateBuffers()
+    {
+        return late;
+    }
+
+    // Log the cores reserved for the foreground app, which the
+    // scheduler may put the audio thread on. Pinning a thread needs
+    // native code.
+    @TargetApi(Build.VERSION_CODES.N)
+    private void logExclusiveCores()
+    {
+        try
+        {
+            Log.d(TAG, "Exclusive cores: " +
+                  Arrays.toString(Process.getExclusiveCores()));
+        }
+
+        catch (RuntimeException e)
+        {
+            Log.d(TAG, "Exclusive cores: " + e);
+        }
+    }
+
+    // Get rate, looked up the first time, as it asks the audio system
+    protected synchronized int getRate()
+    {
+        if (rate == 0)
+            rate = AudioTrack
+                .getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+
+        return rate;
+    }
+
+    // Get position, the frames written to the track so far. Events
+    // are scheduled on this clock.
+    protected long getPosition()
+    {
+        return position;
+    }
+
+    // Wait for the position to reach a frame, which will be at the
+    // end of a buffer. Throws if interrupted or the engine stops.
+    protected void awaitPosition(long frame) throws InterruptedException
+    {
+        synchronized (clock)
+        {
+            while (position < frame)
+            {
+                if (!running)
+                    throw new InterruptedException("Audio stopped");
+
+                clock.wait();
+            }
+        }
+    }
+
+    // Get latency in ms
+    protected double getLatency()
+    {
+        return latency;
+    }
+
+    // Wait for resume, returns false if stopped
+    private boolean waitForResume()
+    {
+        synchronized (lock)
+        {
+            while (paused && running)
+            {
+                try
+                {
+                    lock.wait();
+                }
+
+                catch (InterruptedException e)
+                {
+                    return false;
+                }
+            }
+        }
+
+        return running;
+    }
+}
@@ -0,0 +1,150 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.annotation.TargetApi;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+
+// AudioService
+//
+// Owns the audio engine, so it outlives the activity. The activity
+// starts and binds the service, and drives the engine through the
+// binder. When the activity is recreated the engine carries on with
+// the same thread and track. The service is in the foreground while
+// the tone plays with no activity in front, and stops when the
+// activity finishes.
+public class AudioService extends Service
+{
+    private static final int NOTIFICATION = 1;
+    private static final String CHANNEL = "audio";
+
+    private final IBinder binder = new AudioBinder();
+
+    private Audio audio;
+    private boolean foreground;
+
+    // On create
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+
+        audio = new Audio(this);
+    }
+
+    // On start command, stay started until stopped
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId)
+    {
+        return START_NOT_STICKY;
+    }
+
+    // On bind
+    @Override
+    public IBinder onBind(Intent intent)
+    {
+        return binder;
+    }
+
+    // On destroy
+    @Override
+    public void onDestroy()
+    {
+        super.onDestroy();
+
+        audio.stop();
+    }
+
+    // Get audio
+    protected Audio getAudio()
+    {
+        return audio;
+    }
+
+    // Set foreground, while the tone plays in the background
+    @SuppressWarnings("deprecation")
+    protected void setForeground(boolean f)
+    {
+        if (f == foreground)
+            return;
+
+        foreground = f;
+
+        if (!f)
+        {
+            stopForeground(true);
+            return;
+        }
+
+        Intent intent = new Intent(this, Main.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent pending =
+            PendingIntent.getActivity(this, 0, intent, 0);
+
+        Notification.Builder builder =
+            (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)?
+            getBuilder(): new Notification.Builder(this);
+
+        builder.setSmallIcon(R.drawable.ic_launcher)
+            .setContentTitle(getString(R.string.app_name))
+            .setContentText(getString(R.string.playing))
+            .setContentIntent(pending)
+            .setOngoing(true);
+
+        startForeground(NOTIFICATION, builder.getNotification());
+    }
+
+    // Get builder, with a notification channel
+    @TargetApi(Build.VERSION_CODES.O)
+    private Notification.Builder getBuilder()
+    {
+        NotificationManager manager = (NotificationManager)
+            getSystemService(NOTIFICATION_SERVICE);
+
+        NotificationChannel channel =
+            new NotificationChannel(CHANNEL, getString(R.string.app_name),
+                                    NotificationManager.IMPORTANCE_LOW);
+        manager.createNotificationChannel(channel);
+
+        return new Notification.Builder(this, CHANNEL);
+    }
+
+    // AudioBinder
+    public class AudioBinder extends Binder
+    {
+        // Get service
+        protected AudioService getService()
+        {
+            return AudioService.this;
+        }
+    }
+}
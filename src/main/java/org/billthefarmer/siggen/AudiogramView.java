@@ -0,0 +1,350 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+
+import java.util.Arrays;
+
+// AudiogramView
+//
+// Audiogram, thresholds for each ear against frequency on a log
+// scale, with dB HL increasing downwards. The grid is drawn into a
+// bitmap when the size changes, and the points into a second bitmap
+// as they are added, so adding a point only redraws the area around
+// it. Right ear is a red circle, left ear a blue cross, and both ears
+// a square.
+public class AudiogramView extends SiggenView
+{
+    // Frequency range, octaves above the lowest
+    protected static final double LOWEST = 125;
+    protected static final int OCTAVES = 6;
+
+    // Level range in dB HL
+    protected static final int MIN = -10;
+    protected static final int MAX = 120;
+    protected static final int STEP = 10;
+
+    // Inside the outline drawn by SiggenView
+    private static final int INSET = 3;
+
+    private static final String LABELS[] =
+    {"125", "250", "500", "1k", "2k", "4k", "8k"};
+
+    // Points for each ear, sorted by frequency
+    private final Series series[] =
+    {new Series(), new Series(), new Series()};
+
+    private Bitmap grid;
+    private Bitmap points;
+    private Canvas canvas;
+
+    private Paint point;
+
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+    private float size;
+
+    // AudiogramView
+    public AudiogramView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+
+        point = new Paint(Paint.ANTI_ALIAS_FLAG);
+        point.setStyle(Paint.Style.STROKE);
+    }
+
+    // On measure, as wide as allowed, three quarters as high
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+    {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        int w = MeasureSpec.getSize(widthMeasureSpec);
+        int h = resolveSize(w * 3 / 4, heightMeasureSpec);
+
+        setMeasuredDimension(w, h);
+    }
+
+    // On size changed, draw the grid
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh)
+    {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        grid = null;
+        points = null;
+        canvas = null;
+
+        int cw = w - INSET * 2;
+        int ch = h - INSET * 2;
+
+        if (cw <= 0 || ch <= 0)
+            return;
+
+        float text = ch / 20f;
+        left = text * 3;
+        top = text * 2;
+        right = cw - text;
+        bottom = ch - text;
+        size = text / 2;
+
+        grid = Bitmap.createBitmap(cw, ch, Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(grid);
+
+        paint.setShader(null);
+        paint.setAntiAlias(true);
+        paint.setColor(textColour);
+        paint.setTextSize(text);
+        paint.setStyle(Paint.Style.STROKE);
+
+        // Octaves, with the half octaves fainter
+        for (int i = 0; i <= OCTAVES * 2; i++)
+        {
+            float x = left + (right - left) * i / (OCTAVES * 2);
+
+            paint.setStrokeWidth(1);
+            paint.setAlpha((i % 2 == 0)? 255: 96);
+            c.drawLine(x, top, x, bottom, paint);
+        }
+
+        // Levels, with 0 dB HL heavier
+        for (int l = MIN; l <= MAX; l += STEP)
+        {
+            float y = y(l);
+
+            paint.setStrokeWidth((l == 0)? 2: 1);
+            paint.setAlpha(255);
+            c.drawLine(left, y, right, y, paint);
+        }
+
+        // Labels
+        paint.setAlpha(255);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setTextAlign(Paint.Align.CENTER);
+        for (int i = 0; i < LABELS.length; i++)
+            c.drawText(LABELS[i], left + (right - left) * i / OCTAVES,
+                       top - text / 2, paint);
+
+        paint.setTextAlign(Paint.Align.RIGHT);
+        for (int l = MIN; l <= MAX; l += STEP * 2)
+            c.drawText(Integer.toString(l), left - text / 2,
+                       y(l) + text / 3, paint);
+
+        points = Bitmap.createBitmap(cw, ch, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(points);
+        point.setStrokeWidth(Math.max(text / 8, 2));
+
+        redraw();
+    }
+
+    // Add a point, level in dB HL
+    protected void add(int ear, double frequency, double level)
+    {
+        if (frequency < LOWEST || frequency > LOWEST * (1 << OCTAVES))
+            return;
+
+        Series s = series[ear];
+        int i = s.lower(frequency);
+
+        // Replace an existing point, or insert between two, which
+        // both mean erasing a line
+        if (i < s.size && s.frequencies[i] == frequency)
+        {
+            s.levels[i] = level;
+            redraw();
+            return;
+        }
+
+        s.insert(i, frequency, level);
+
+        if (i > 0 && i < s.size - 1)
+        {
+            redraw();
+            return;
+        }
+
+        if (canvas == null)
+            return;
+
+        // Line to the neighbour, if any, and the symbol
+        int n = (i > 0)? i - 1: (i < s.size - 1)? i + 1: i;
+
+        setColour(ear);
+        canvas.drawLine(x(s.frequencies[n]), y(s.levels[n]),
+                        x(frequency), y(level), point);
+        symbol(ear, frequency, level);
+
+        // Only the area around the line
+        float x1 = Math.min(x(s.frequencies[n]), x(frequency));
+        float x2 = Math.max(x(s.frequencies[n]), x(frequency));
+        float y1 = Math.min(y(s.levels[n]), y(level));
+        float y2 = Math.max(y(s.levels[n]), y(level));
+
+        int margin = (int) (size + point.getStrokeWidth()) + 1;
+        invalidate((int) x1 + INSET - margin, (int) y1 + INSET - margin,
+                   (int) x2 + INSET + margin, (int) y2 + INSET + margin);
+    }
+
+    // Clear
+    protected void clear()
+    {
+        for (Series s : series)
+            s.size = 0;
+
+        redraw();
+    }
+
+    // On draw
+    @Override
+    protected void onDraw(Canvas canvas)
+    {
+        super.onDraw(canvas);
+
+        if (grid == null)
+            return;
+
+        canvas.drawBitmap(grid, 0, 0, null);
+        canvas.drawBitmap(points, 0, 0, null);
+    }
+
+    // Redraw all the points
+    private void redraw()
+    {
+        if (canvas == null)
+            return;
+
+        points.eraseColor(Color.TRANSPARENT);
+
+        for (int e = 0; e < series.length; e++)
+        {
+            Series s = series[e];
+
+            setColour(e);
+            for (int i = 1; i < s.size; i++)
+                canvas.drawLine(x(s.frequencies[i - 1]), y(s.levels[i - 1]),
+                                x(s.frequencies[i]), y(s.levels[i]), point);
+
+            for (int i = 0; i < s.size; i++)
+                symbol(e, s.frequencies[i], s.levels[i]);
+        }
+
+        invalidate();
+    }
+
+    // Draw a symbol
+    private void symbol(int ear, double frequency, double level)
+    {
+        float x = x(frequency);
+        float y = y(level);
+
+        switch (ear)
+        {
+        case Audio.RIGHT:
+            canvas.drawCircle(x, y, size, point);
+            break;
+
+        case Audio.LEFT:
+            canvas.drawLine(x - size, y - size, x + size, y + size, point);
+            canvas.drawLine(x - size, y + size, x + size, y - size, point);
+            break;
+
+        default:
+            canvas.drawRect(x - size, y - size, x + size, y + size, point);
+            break;
+        }
+    }
+
+    // Set colour for an ear
+    private void setColour(int ear)
+    {
+        switch (ear)
+        {
+        case Audio.RIGHT:
+            point.setColor(Color.RED);
+            break;
+
+        case Audio.LEFT:
+            point.setColor(Color.BLUE);
+            break;
+
+        default:
+            point.setColor(textColour);
+            break;
+        }
+    }
+
+    // X for a frequency
+    private float x(double frequency)
+    {
+        return left + (float) ((right - left) *
+                               Math.log(frequency / LOWEST) /
+                               Math.log(2) / OCTAVES);
+    }
+
+    // Y for a level, clamped to the grid
+    private float y(double level)
+    {
+        level = Math.max(MIN, Math.min(MAX, level));
+        return top + (float) ((bottom - top) * (level - MIN) / (MAX - MIN));
+    }
+
+    // Series, points for one ear sorted by frequency
+    private static class Series
+    {
+        private double frequencies[] = new double[8];
+        private double levels[] = new double[8];
+        private int size;
+
+        // Index of the first frequency not below f
+        private int lower(double f)
+        {
+            int i = Arrays.binarySearch(frequencies, 0, size, f);
+            return (i < 0)? -i - 1: i;
+        }
+
+        // Insert at an index
+        private void insert(int i, double f, double l)
+        {
+            if (size == frequencies.length)
+            {
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+                levels = Arrays.copyOf(levels, size * 2);
+            }
+
+            System.arraycopy(frequencies, i, frequencies, i + 1, size - i);
+            System.arraycopy(levels, i, levels, i + 1, size - i);
+            frequencies[i] = f;
+            levels[i] = l;
+            size++;
+        }
+    }
+}
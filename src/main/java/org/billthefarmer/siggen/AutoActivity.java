@@ -4,8 +4,26 @@ import android.app.Activity;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+public class AutoActivity extends Activity
+    implements View.OnClickListener, AutoTest.Listener
+{
+    private Audio audio;
+    private AutoTest test;
+
+    private Results log;
+    private long session;
+
+    private AudiogramView audiogram;
+    private TextView status;
+    private TextView results;
+    private Button start;
 
-public class AutoActivity extends Activity {
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -19,10 +37,137 @@ public class AutoActivity extends Activity {
             setTheme(R.style.AppDarkTheme);
         setContentView(R.layout.auto);
 
+        audiogram = findViewById(R.id.audiogram);
+        status = findViewById(R.id.status);
+        results = findViewById(R.id.results);
+        start = findViewById(R.id.start);
+
+        start.setOnClickListener(this);
+        findViewById(R.id.heard).setOnClickListener(this);
+
+        // Audio, silent until the test presents a tone
+        audio = new Audio(this);
+        audio.setCalibration(new Profiles(this).getCurrent());
+        audio.setMute(true);
+        audio.start();
+
+        log = Results.get(getFilesDir());
+    }
+
+    // On resume
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        audio.resume();
+    }
 
+    // On pause, the test waits while the audio is paused
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        audio.pause();
     }
 
+    // On destroy
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        if (test != null)
+            test.stop();
 
+        audio.stop();
+    }
 
+    // On click
+    @Override
+    public void onClick(View v)
+    {
+        switch (v.getId())
+        {
+        case R.id.start:
+            if (test != null && test.isRunning())
+            {
+                test.stop();
+                start.setText(R.string.start);
+                status.setText(R.string.stopped);
+            }
 
+            else
+            {
+                // Each test is a session
+                session = System.currentTimeMillis();
+                test = new AutoTest(audio, this);
+                test.start();
+                start.setText(R.string.stop);
+                results.setText("");
+                audiogram.clear();
+            }
+            break;
+
+        case R.id.heard:
+            if (test != null)
+                test.respond();
+            break;
+        }
+    }
+
+    // On present
+    @Override
+    public void onPresent(int ear, int frequency, int level)
+    {
+        String text =
+            String.format(Locale.getDefault(), getString(R.string.presenting),
+                          getString(ear(ear)), AutoTest.FREQUENCIES[frequency],
+                          level);
+        runOnUiThread(() -> status.setText(text));
+    }
+
+    // On result
+    @Override
+    public void onResult(int ear, int frequency, double threshold)
+    {
+        if (!Double.isNaN(threshold))
+            log.add(session, AutoTest.EARS[ear],
+                    AutoTest.FREQUENCIES[frequency], threshold);
+
+        String text = Double.isNaN(threshold)?
+            String.format(Locale.getDefault(), getString(R.string.no_response),
+                          getString(ear(ear)),
+                          AutoTest.FREQUENCIES[frequency]):
+            String.format(Locale.getDefault(), getString(R.string.threshold),
+                          getString(ear(ear)),
+                          AutoTest.FREQUENCIES[frequency], threshold);
+        runOnUiThread(() ->
+        {
+            results.append(text + "\n");
+
+            // Plot as it goes
+            if (!Double.isNaN(threshold))
+                audiogram.add(AutoTest.EARS[ear],
+                              AutoTest.FREQUENCIES[frequency], threshold);
+        });
+    }
+
+    // On finished
+    @Override
+    public void onFinished()
+    {
+        log.flush();
+        runOnUiThread(() ->
+        {
+            status.setText(R.string.finished);
+            start.setText(R.string.start);
+        });
+    }
+
+    // Ear string
+    private int ear(int ear)
+    {
+        return (AutoTest.EARS[ear] == Audio.LEFT)?
+            R.string.left: R.string.right;
+    }
 }
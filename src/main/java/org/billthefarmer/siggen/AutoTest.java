@@ -0,0 +1,247 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.Arrays;
+
+// AutoTest
+//
+// Automated Hughson-Westlake threshold search. Starting at 40dB HL
+// the level goes down 10dB after each response and up 5dB after each
+// miss. The threshold is the lowest level heard on two ascending
+// presentations. The test runs on its own thread and schedules tone
+// on and off events on the audio engine's frame clock, so each tone
+// starts and stops on its exact frame with a raised cosine ramp.
+public class AutoTest implements Runnable
+{
+    // Test order, 1kHz first then up, then down
+    protected static final double FREQUENCIES[] =
+    {1000, 2000, 4000, 8000, 500, 250, 125};
+
+    protected static final int EARS[] = {Audio.RIGHT, Audio.LEFT};
+
+    // Levels in dB HL
+    protected static final int START = 40;
+    protected static final int MIN = -10;
+    protected static final int MAX = 90;
+    protected static final int DOWN = 10;
+    protected static final int UP = 5;
+
+    // Ascending responses needed at a level
+    protected static final int REQUIRED = 2;
+    protected static final int TRIALS = 40;
+
+    // Timing in ms
+    protected static final double TONE = 1000;
+    protected static final double RESPONSE = 1000;
+    protected static final double GAP_MIN = 1000;
+    protected static final double GAP_MAX = 2500;
+
+    private final Audio audio;
+    private final Listener listener;
+    private final Xorshift random;
+
+    private final double thresholds[][];
+
+    private Thread thread;
+    private volatile long response;
+
+    // AutoTest
+    public AutoTest(Audio audio, Listener listener)
+    {
+        this.audio = audio;
+        this.listener = listener;
+
+        random = new Xorshift((int) System.nanoTime());
+        thresholds = new double[EARS.length][FREQUENCIES.length];
+
+        for (double t[] : thresholds)
+            Arrays.fill(t, Double.NaN);
+    }
+
+    // Start
+    protected void start()
+    {
+        if (thread != null)
+            return;
+
+        thread = new Thread(this, "AutoTest");
+        thread.start();
+    }
+
+    // Stop
+    protected void stop()
+    {
+        Thread t = thread;
+        thread = null;
+
+        if (t != null)
+            t.interrupt();
+    }
+
+    // Is running
+    protected boolean isRunning()
+    {
+        return thread != null;
+    }
+
+    // Respond, the subject heard a tone
+    protected void respond()
+    {
+        response = heard();
+    }
+
+    // Get threshold in dB HL, NaN if not found
+    protected double getThreshold(int ear, int frequency)
+    {
+        return thresholds[ear][frequency];
+    }
+
+    // Run
+    @Override
+    public void run()
+    {
+        try
+        {
+            // Close the gate at once before unmuting
+            audio.schedule(0, Audio.TONE_CLOSE);
+            audio.setMute(false);
+
+            for (int e = 0; e < EARS.length; e++)
+            {
+                audio.setEar(EARS[e]);
+
+                for (int f = 0; f < FREQUENCIES.length; f++)
+                {
+                    audio.setFrequency(FREQUENCIES[f]);
+                    thresholds[e][f] = search(e, f);
+
+                    listener.onResult(e, f, thresholds[e][f]);
+                }
+            }
+
+            listener.onFinished();
+        }
+
+        catch (InterruptedException e)
+        {
+        }
+
+        finally
+        {
+            // Mute, then open the gate again
+            audio.setMute(true);
+            audio.schedule(0, Audio.TONE_ON);
+            thread = null;
+        }
+    }
+
+    // Search for the threshold
+    private double search(int ear, int frequency) throws InterruptedException
+    {
+        // Limit the level to full scale for this frequency
+        double full = audio.getCalibration()
+            .getMaximum(FREQUENCIES[frequency]);
+        int max = MIN + ((int) Math.floor(full) - MIN) / UP * UP;
+        max = Math.max(Math.min(max, MAX), MIN);
+
+        int responses[] = new int[(MAX - MIN) / UP + 1];
+        boolean ascending = false;
+        int level = Math.min(START, max);
+
+        for (int trial = 0; trial < TRIALS; trial++)
+        {
+            listener.onPresent(ear, frequency, level);
+
+            if (present(level))
+            {
+                // Count ascending responses, and repeated responses
+                // at the lowest level
+                if (ascending || level == MIN)
+                {
+                    if (++responses[(level - MIN) / UP] >= REQUIRED)
+                        return level;
+                }
+
+                level = Math.max(level - DOWN, MIN);
+                ascending = false;
+            }
+
+            else
+            {
+                // No response at the maximum
+                if (level >= max)
+                    return Double.NaN;
+
+                level = Math.min(level + UP, max);
+                ascending = true;
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    // Present a tone, returns true if the subject responded during
+    // the tone or the response time after it
+    private boolean present(int level) throws InterruptedException
+    {
+        double gap = GAP_MIN + random.uniform() * (GAP_MAX - GAP_MIN);
+        long on = audio.getPosition() + frames(gap);
+        long off = on + frames(TONE);
+
+        // Schedule the tone
+        response = -1;
+        audio.schedule(on, Audio.LEVEL,
+                       Math.pow(10.0, level / 20.0));
+        audio.schedule(on, Audio.TONE_ON);
+        audio.schedule(off, Audio.TONE_OFF);
+
+        // Wait until the response time after the tone has been heard
+        audio.awaitPosition(off + frames(RESPONSE) +
+                            frames(audio.getLatency()));
+
+        return response >= on;
+    }
+
+    // Heard, the frame playing now. The position is the write clock,
+    // which is ahead of the listener by the frames in the track.
+    private long heard()
+    {
+        return audio.getPosition() - frames(audio.getLatency());
+    }
+
+    // Frames
+    private long frames(double ms)
+    {
+        return Math.round(ms * audio.getRate() / 1000.0);
+    }
+
+    // Listener, called on the test thread
+    public interface Listener
+    {
+        void onPresent(int ear, int frequency, int level);
+        void onResult(int ear, int frequency, double threshold);
+        void onFinished();
+    }
+}
@@ -0,0 +1,134 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Benchmark
+//
+// Times render loops on the JVM. Each case is run for a couple of
+// hundred rounds first, so the JIT has settled, then timed over more
+// rounds, and the best round is reported, as it has the least
+// interference from the rest of the system. A case returns a sample
+// of what it rendered, which is kept so the work can't be optimised
+// away.
+public class Benchmark
+{
+    // Sample rate
+    protected static final int RATE = 48000;
+
+    // Rounds, and the samples rendered in each
+    private static final int WARMUP = 200;
+    private static final int ROUNDS = 20;
+    private static final int SAMPLES = RATE * 4;
+
+    private static volatile float sink;
+
+    // Case, renders length samples, or other units
+    public interface Case
+    {
+        float render(int length);
+    }
+
+    // Time a case that renders length samples a call, returns the
+    // best samples per second
+    protected static double time(String name, int length, Case c)
+    {
+        return time(name, "samples", length, c);
+    }
+
+    // Time a case that renders length units a call, returns the best
+    // units per second
+    protected static double time(String name, String unit, int length,
+                                 Case c)
+    {
+        return time(new String[] {name}, unit, length, c)[0];
+    }
+
+    // Time cases together, a round of each in turn, so each is timed
+    // with the JIT in the same state, returns the best units per
+    // second of each
+    protected static double[] time(String names[], String unit, int length,
+                                   Case... cases)
+    {
+        int calls = Math.max(SAMPLES / length, 1);
+        long best[] = new long[cases.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+
+        for (int r = 0; r < WARMUP + ROUNDS; r++)
+        {
+            for (int i = 0; i < cases.length; i++)
+            {
+                long time = run(cases[i], calls, length);
+                if (r >= WARMUP && time < best[i])
+                    best[i] = time;
+            }
+        }
+
+        double rates[] = new double[cases.length];
+        for (int i = 0; i < cases.length; i++)
+        {
+            rates[i] = (double) calls * length * 1e9 / best[i];
+            System.out.println(String.format(Locale.ROOT,
+                                             "%-24s %8.2f M%s/s %6.2fns",
+                                             names[i], rates[i] / 1e6,
+                                             unit, 1e9 / rates[i]));
+        }
+
+        return rates;
+    }
+
+    // Run a case for a number of calls, returns the time taken
+    private static long run(Case c, int calls, int length)
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++)
+            sink += c.render(length);
+
+        return System.nanoTime() - start;
+    }
+
+    // Generator playing a steady tone, with the parameters edited
+    protected static Generator generator(Params.Editor editor)
+    {
+        AtomicReference<Params> params = new AtomicReference<>(new Params());
+        Params p = Params.update(params, e ->
+        {
+            e.level = 0.5;
+            editor.edit(e);
+        });
+
+        Wavetable.getTables(p.waveform);
+        return new Generator(RATE, params, new Scheduler());
+    }
+
+    // Report a ratio between two cases
+    protected static void ratio(String name, double a, double b)
+    {
+        System.out.println(String.format(Locale.ROOT, "%-24s %8.2fx",
+                                         name, a / b));
+    }
+}
@@ -0,0 +1,214 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.Arrays;
+
+// Bookmarks
+//
+// Bookmarked frequencies, kept sorted in a double array so lookups
+// are a binary search. The preference is parsed once per process,
+// and written only when a bookmark is added or removed.
+public class Bookmarks
+{
+    private static final String TAG = "Bookmarks";
+
+    // Frequencies closer than this in Hz are the same bookmark
+    protected static final double MARGIN = 1.0;
+
+    private static Bookmarks instance;
+
+    private final SharedPreferences preferences;
+
+    private double values[] = new double[16];
+    private int size;
+
+    // Bookmarks
+    private Bookmarks(SharedPreferences preferences)
+    {
+        this.preferences = preferences;
+
+        try
+        {
+            JSONArray json =
+                new JSONArray(preferences.getString(Main.PREF_BOOKMARKS,
+                                                    "[]"));
+            for (int i = 0; i < json.length(); i++)
+                insert(json.getDouble(i));
+        }
+
+        catch (JSONException e)
+        {
+            Log.d(TAG, "Load: " + e);
+        }
+    }
+
+    // Get the bookmarks, loading them the first time
+    protected static synchronized Bookmarks get(SharedPreferences p)
+    {
+        if (instance == null)
+            instance = new Bookmarks(p);
+
+        return instance;
+    }
+
+    // Size
+    protected int size()
+    {
+        return size;
+    }
+
+    // Get a bookmark
+    protected double get(int i)
+    {
+        return values[i];
+    }
+
+    // Find the bookmark nearest a frequency within MARGIN, returns
+    // the index or -1 if none
+    protected int find(double f)
+    {
+        // Compare the neighbours either side
+        int i = lower(f);
+        int nearest = -1;
+        double d = MARGIN;
+
+        if (i < size && values[i] - f < d)
+        {
+            nearest = i;
+            d = values[i] - f;
+        }
+
+        if (i > 0 && f - values[i - 1] < d)
+            nearest = i - 1;
+
+        return nearest;
+    }
+
+    // Next bookmark above a frequency, NaN if none
+    protected double next(double f)
+    {
+        int i = upper(f + MARGIN);
+        return (i < size)? values[i]: Double.NaN;
+    }
+
+    // Previous bookmark below a frequency, NaN if none
+    protected double previous(double f)
+    {
+        int i = lower(f - MARGIN);
+        return (i > 0)? values[i - 1]: Double.NaN;
+    }
+
+    // Add a bookmark
+    protected void add(double f)
+    {
+        insert(f);
+        save();
+    }
+
+    // Remove a bookmark
+    protected void remove(int i)
+    {
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        save();
+    }
+
+    // Insert, keeping the array sorted
+    private void insert(double f)
+    {
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+
+        int i = lower(f);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = f;
+        size++;
+    }
+
+    // Index of the first value not below f
+    private int lower(double f)
+    {
+        int lo = 0;
+        int hi = size;
+
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < f)
+                lo = mid + 1;
+
+            else
+                hi = mid;
+        }
+
+        return lo;
+    }
+
+    // Index of the first value above f
+    private int upper(double f)
+    {
+        int lo = 0;
+        int hi = size;
+
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= f)
+                lo = mid + 1;
+
+            else
+                hi = mid;
+        }
+
+        return lo;
+    }
+
+    // Save, in the background
+    private void save()
+    {
+        JSONArray json = new JSONArray();
+
+        try
+        {
+            for (int i = 0; i < size; i++)
+                json.put(values[i]);
+        }
+
+        catch (JSONException e)
+        {
+            Log.d(TAG, "Save: " + e);
+            return;
+        }
+
+        preferences.edit().putString(Main.PREF_BOOKMARKS,
+                                     json.toString()).apply();
+    }
+}
@@ -0,0 +1,186 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Calibration
+//
+// Reference levels for one transducer, the output in dB relative to
+// full scale that gives 0dB HL at each audiometric frequency. The
+// gains are interpolated, in dB against log frequency, into a lookup
+// table when the profile is created, so the render path does one log
+// and a table lookup per block. A profile is immutable, so switching
+// profiles is a single parameter update.
+public class Calibration
+{
+    protected static final double FREQUENCIES[] =
+    {125, 250, 500, 750, 1000, 1500, 2000, 3000, 4000, 6000, 8000};
+
+    // Uncalibrated, full scale is 90dB HL
+    protected static final double UNCALIBRATED = -90.0;
+
+    // Lookup table from 10Hz, in steps of 1/96 octave
+    private static final double MIN = 10.0;
+    private static final int STEPS = 96;
+    private static final int OCTAVES = 12;
+    private static final int POINTS = STEPS * OCTAVES + 1;
+
+    private static final double SCALE = STEPS / Math.log(2.0);
+
+    // Default profile
+    protected static final Calibration NONE = new Calibration("");
+
+    private final String name;
+    private final double levels[];
+    private final float gains[];
+
+    // Calibration, uncalibrated
+    public Calibration(String name)
+    {
+        this(name, uncalibrated());
+    }
+
+    // Calibration
+    public Calibration(String name, double levels[])
+    {
+        if (levels.length != FREQUENCIES.length)
+            throw new IllegalArgumentException("Levels: " + levels.length);
+
+        this.name = name;
+        this.levels = levels.clone();
+
+        gains = new float[POINTS + 1];
+        for (int i = 0; i < POINTS; i++)
+        {
+            double f = MIN * Math.pow(2.0, (double) i / STEPS);
+            gains[i] = (float) Math.pow(10.0, interpolate(f) / 20.0);
+        }
+
+        // Guard point
+        gains[POINTS] = gains[POINTS - 1];
+    }
+
+    // Get name
+    protected String getName()
+    {
+        return name;
+    }
+
+    // Get levels
+    protected double[] getLevels()
+    {
+        return levels.clone();
+    }
+
+    // Get reference level at a frequency, in dB re full scale
+    protected double getLevel(double f)
+    {
+        return interpolate(f);
+    }
+
+    // Get maximum, the dB HL at full scale
+    protected double getMaximum(double f)
+    {
+        return -interpolate(f);
+    }
+
+    // Gain, linear, for a frequency
+    protected float gain(double f)
+    {
+        double x = Math.log(Math.max(f, MIN) / MIN) * SCALE;
+        if (x >= POINTS - 1)
+            return gains[POINTS - 1];
+
+        int i = (int) x;
+        float a = gains[i];
+
+        return a + (gains[i + 1] - a) * (float) (x - i);
+    }
+
+    // Adjust the reference level at the nearest audiometric frequency,
+    // returns a new profile
+    protected Calibration adjust(double f, double db)
+    {
+        double l[] = levels.clone();
+        l[nearest(f)] += db;
+
+        return new Calibration(name, l);
+    }
+
+    // Rename, returns a new profile
+    protected Calibration rename(String n)
+    {
+        return new Calibration(n, levels);
+    }
+
+    // Nearest audiometric frequency, on a log scale
+    protected static int nearest(double f)
+    {
+        int n = 0;
+        double d = Double.MAX_VALUE;
+
+        for (int i = 0; i < FREQUENCIES.length; i++)
+        {
+            double x = Math.abs(Math.log(f / FREQUENCIES[i]));
+            if (x < d)
+            {
+                d = x;
+                n = i;
+            }
+        }
+
+        return n;
+    }
+
+    // Interpolate the reference level in dB against log frequency,
+    // flat outside the audiometric range
+    private double interpolate(double f)
+    {
+        int last = FREQUENCIES.length - 1;
+
+        if (f <= FREQUENCIES[0])
+            return levels[0];
+
+        if (f >= FREQUENCIES[last])
+            return levels[last];
+
+        int i = 0;
+        while (f > FREQUENCIES[i + 1])
+            i++;
+
+        double x = Math.log(f / FREQUENCIES[i]) /
+            Math.log(FREQUENCIES[i + 1] / FREQUENCIES[i]);
+
+        return levels[i] + (levels[i + 1] - levels[i]) * x;
+    }
+
+    // Uncalibrated levels
+    private static double[] uncalibrated()
+    {
+        double l[] = new double[FREQUENCIES.length];
+        for (int i = 0; i < l.length; i++)
+            l[i] = UNCALIBRATED;
+
+        return l;
+    }
+}
@@ -0,0 +1,215 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// ChannelBenchmark
+//
+// Compares the cost per frame of the stereo render, with per channel
+// levels and routing, against the mono loop it replaced, which
+// rendered the tone, scaled it by a level ramp and mixed in the
+// noise. Both are timed together, for a tone alone, and for a tone
+// with masking noise, in one ear and the noise in the other for
+// stereo. The mono loop does the same per block work as the
+// generator, so only the per frame cost differs.
+public class ChannelBenchmark
+{
+    // Frames in a buffer
+    private static final int FRAMES = Generator.BLOCK * 2;
+
+    // Allowance for timing noise, and for the JIT compiling the two
+    // loops differently, which moves either by up to a third between
+    // runs on a single core
+    private static final double TOLERANCE = 1.5;
+
+    // Main
+    public static void main(String args[])
+    {
+        double tone[] =
+            Benchmark.time(new String[] {"Mono tone", "Stereo tone"},
+                           "frames", FRAMES, mono(Noise.NONE),
+                           stereo(p -> {}));
+
+        double noise[] =
+            Benchmark.time(new String[] {"Mono noise", "Stereo routed"},
+                           "frames", FRAMES, mono(Noise.WHITE),
+                           stereo(p ->
+                           {
+                               p.ear = Generator.LEFT;
+                               p.noise = Noise.WHITE;
+                               p.noiseEar = Generator.RIGHT;
+                           }));
+
+        Benchmark.ratio("Stereo/Mono tone", tone[1], tone[0]);
+        Benchmark.ratio("Stereo/Mono noise", noise[1], noise[0]);
+
+        if (tone[1] * TOLERANCE < tone[0] ||
+            noise[1] * TOLERANCE < noise[0])
+            System.exit(1);
+    }
+
+    // Stereo, through the generator
+    private static Benchmark.Case stereo(Params.Editor editor)
+    {
+        Generator generator = Benchmark.generator(editor);
+        float buffer[] = new float[FRAMES * 2];
+
+        return n ->
+        {
+            generator.render(buffer, n);
+            return buffer[0];
+        };
+    }
+
+    // Mono, as the loop was before the stereo render
+    private static Benchmark.Case mono(int type)
+    {
+        Mono mono = new Mono(type);
+        float buffer[] = new float[FRAMES];
+
+        return n ->
+        {
+            mono.render(buffer, n);
+            return buffer[0];
+        };
+    }
+
+    // Mono
+    //
+    // The mono render loop, which rendered the tone, scaled it by a
+    // level ramp and mixed in the noise, with the same per block work
+    // as the generator, the parameters, calibration, table and gate.
+    private static class Mono
+    {
+        private final AtomicReference<Params> params;
+        private final int type;
+
+        private final Oscillator oscillator;
+        private final Noise noise;
+
+        private final Glide f;
+        private final Glide l;
+        private final Glide nl;
+
+        private final float block[] = new float[Generator.BLOCK];
+        private final float noises[] = new float[Generator.BLOCK];
+
+        private float envelope = 1.0f;
+
+        // Mono
+        private Mono(int type)
+        {
+            this.type = type;
+
+            params = new AtomicReference<>(new Params());
+            Params.update(params, p -> p.level = 0.5);
+
+            oscillator = new Oscillator(Benchmark.RATE);
+            noise = new Noise(Benchmark.RATE);
+
+            f = new Glide(Benchmark.RATE);
+            l = new Glide(Benchmark.RATE);
+            nl = new Glide(Benchmark.RATE);
+            f.setValue(440.0);
+        }
+
+        // Render
+        private void render(float buffer[], int frames)
+        {
+            for (int offset = 0; offset < frames; offset += Generator.BLOCK)
+                block(buffer, offset, Math.min(Generator.BLOCK,
+                                               frames - offset));
+        }
+
+        // Render a block
+        private void block(float buffer[], int offset, int n)
+        {
+            Params p = params.get();
+
+            double fs = f.ramp(p.frequency, n);
+            double tone = p.mute? 0.0: p.level *
+                p.calibration.gain(f.getValue()) * Generator.AMPLITUDE;
+            double ls = l.ramp(tone, n);
+
+            double high = Math.max(fs, f.getValue());
+            float table[] =
+                Wavetable.getTable(p.waveform, high, Benchmark.RATE);
+            oscillator.setTable((table != null)? table: Oscillator.SINE);
+
+            oscillator.render(block, n, fs, f.getValue());
+            gate(block, n);
+            scale(block, n, ls, l.getStep());
+
+            double ns = nl.ramp((type == Noise.NONE)? 0.0:
+                                0.5 * Generator.AMPLITUDE, n);
+
+            if (ns > 0.0 || nl.getValue() > 0.0)
+            {
+                noise.render(noises, n, type, f.getValue());
+                mix(noises, block, n, ns, nl.getStep());
+            }
+
+            System.arraycopy(block, 0, buffer, offset, n);
+        }
+
+        // Gate, as the generator envelope, which is open
+        private void gate(float block[], int n)
+        {
+            if (envelope == 1.0f)
+                return;
+
+            for (int i = 0; i < n; i++)
+                block[i] *= envelope;
+        }
+    }
+
+    // Scale by a level ramp
+    private static void scale(float block[], int n, double level,
+                              double step)
+    {
+        float lv = (float) level;
+        float dl = (float) step;
+
+        for (int i = 0; i < n; i++)
+        {
+            block[i] *= lv;
+            lv += dl;
+        }
+    }
+
+    // Mix in by a level ramp
+    private static void mix(float source[], float block[], int n,
+                            double level, double step)
+    {
+        float lv = (float) level;
+        float dl = (float) step;
+
+        for (int i = 0; i < n; i++)
+        {
+            block[i] += source[i] * lv;
+            lv += dl;
+        }
+    }
+}
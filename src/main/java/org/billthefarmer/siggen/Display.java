@@ -28,19 +28,52 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.util.AttributeSet;
 
-import java.util.Locale;
+import java.text.DecimalFormatSymbols;
 
 // Display
+//
+// Frequency and level display. The values are formatted into reused
+// char arrays by a fixed point formatter rather than String.format,
+// the text paint is set up when the size changes, and only the part
+// of a line from the first changed character is invalidated, so
+// updating the display during a knob fling allocates nothing.
 public class Display extends SiggenView
 {
     private static final int MARGIN = 8;
 
-    private double frequency;
-    private double level;
+    // Longest text, and the offset of the clip rect
+    private static final int LENGTH = 24;
+    private static final int OFFSET = 3;
+
+    private static final char HZ[] = {'H', 'z'};
+    private static final char DB[] = {'d', 'B'};
+
+    private static final long POWERS[] = {1, 10, 100, 1000, 10000};
+
+    private final char frequencyText[] = new char[LENGTH];
+    private final char levelText[] = new char[LENGTH];
+    private final char scratch[] = new char[LENGTH];
+
+    private int frequencyLength;
+    private int levelLength;
+
+    private final Paint text;
+    private final char separator;
 
     public Display(Context context, AttributeSet attrs)
     {
         super(context, attrs);
+
+        separator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+        text = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setTextAlign(Paint.Align.LEFT);
+        text.setTextScaleX(2.0f);
+        text.setColor(textColour);
+        text.setStyle(Paint.Style.FILL_AND_STROKE);
+
+        frequencyLength = format(frequencyText, 0.0, HZ);
+        levelLength = format(levelText, 0.0, DB);
     }
 
     // On measure
@@ -55,18 +88,115 @@ public class Display extends SiggenView
         setMeasuredDimension(w, h);
     }
 
+    // On size changed
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh)
+    {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        text.setTextSize(height);
+    }
+
     // Set frequency
     protected void setFrequency(double f)
     {
-        frequency = f;
-        invalidate();
+        int n = format(scratch, f, HZ);
+        int first = changed(frequencyText, frequencyLength, n);
+        if (first < 0)
+            return;
+
+        frequencyLength = n;
+        invalidate(MARGIN, frequencyText, first, height * 6 / 7);
     }
 
     // Set level
     protected void setLevel(double l)
     {
-        level = l;
-        invalidate();
+        int n = format(scratch, l, DB);
+        int first = changed(levelText, levelLength, n);
+        if (first < 0)
+            return;
+
+        levelLength = n;
+        invalidate(width, levelText, first, height * 2);
+    }
+
+    // Changed, copy the scratch text if it differs, returns the first
+    // changed character or -1 if none
+    private int changed(char t[], int length, int n)
+    {
+        int first = 0;
+        while (first < n && first < length && t[first] == scratch[first])
+            first++;
+
+        if (first == n && n == length)
+            return -1;
+
+        System.arraycopy(scratch, first, t, first, n - first);
+        return first;
+    }
+
+    // Invalidate a line from the first changed character. Hardware
+    // accelerated views redraw the whole view anyway.
+    @SuppressWarnings("deprecation")
+    private void invalidate(int x, char t[], int first, int y)
+    {
+        int left = x + (int) text.measureText(t, 0, first) + OFFSET;
+        int top = y - height + OFFSET;
+        int bottom = y + height / 3 + OFFSET;
+
+        invalidate(left, Math.max(top, 0), getWidth(), bottom);
+    }
+
+    // Format a value as %5.2f followed by the units, returns the
+    // length
+    private int format(char b[], double v, char units[])
+    {
+        return format(b, v, 5, 2, units);
+    }
+
+    // Format a value in fixed point, right aligned in width, followed
+    // by the units, returns the length
+    private int format(char b[], double v, int width, int decimals,
+                       char units[])
+    {
+        boolean negative = v < 0.0;
+        long x = Math.round(Math.abs(v) * POWERS[decimals]);
+        long whole = x / POWERS[decimals];
+        long fraction = x % POWERS[decimals];
+
+        // Build the number backwards from the end of the buffer
+        int i = b.length - units.length;
+
+        for (int d = 0; d < decimals; d++)
+        {
+            b[--i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+
+        if (decimals > 0)
+            b[--i] = separator;
+
+        do
+        {
+            b[--i] = (char) ('0' + whole % 10);
+            whole /= 10;
+        }
+        while (whole > 0 && i > 1);
+
+        if (negative)
+            b[--i] = '-';
+
+        int end = b.length - units.length;
+        while (end - i < width)
+            b[--i] = ' ';
+
+        // Move to the start and add the units
+        int n = end - i;
+        System.arraycopy(b, i, b, 0, n);
+        System.arraycopy(units, 0, b, n, units.length);
+
+        return n + units.length;
     }
 
     // On draw
@@ -74,16 +204,9 @@ public class Display extends SiggenView
     protected void onDraw(Canvas canvas)
     {
         super.onDraw(canvas);
-        String s = String.format(Locale.getDefault(), "%5.2fHz", frequency);
-        paint.setTextAlign(Paint.Align.LEFT);
-        paint.setTextSize(height );
-        paint.setTextScaleX(2.0f);
-        paint.setColor(textColour);
-        paint.setStyle(Paint.Style.FILL_AND_STROKE);
-        canvas.drawText(s, MARGIN, height * 6 / 7, paint);
-
-        s = String.format(Locale.getDefault(), "%5.2fdB", level);
-        paint.setTextAlign(Paint.Align.LEFT);
-        canvas.drawText(s, width , height *2, paint);
+
+        canvas.drawText(frequencyText, 0, frequencyLength,
+                        MARGIN, height * 6 / 7, text);
+        canvas.drawText(levelText, 0, levelLength, width, height * 2, text);
     }
 }
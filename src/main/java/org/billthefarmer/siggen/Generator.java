@@ -0,0 +1,370 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Generator
+//
+// Renders interleaved stereo frames. Parameters are picked up once
+// per block. Scheduled events split a block so they take effect on
+// their exact frame. The tone is gated by a raised cosine envelope,
+// which is open unless events close it.
+public class Generator
+{
+    // Block size for parameter ramps
+    protected static final int BLOCK = 256;
+
+    // Full scale level
+    protected static final double AMPLITUDE = 0.5;
+
+    // Channel routing
+    protected static final int BOTH = 0;
+    protected static final int LEFT = 1;
+    protected static final int RIGHT = 2;
+
+    private final int rate;
+    private final AtomicReference<Params> params;
+    private final Scheduler scheduler;
+
+    private final Oscillator oscillator;
+    private final Noise noise;
+
+    // Glides for the frequency and the tone and noise level in each
+    // channel
+    private final Glide f;
+    private final Glide tl;
+    private final Glide tr;
+    private final Glide nl;
+    private final Glide nr;
+
+    private final float tones[] = new float[BLOCK];
+    private final float noises[] = new float[BLOCK];
+
+    private long frame;
+    private int type;
+
+    // Targets, from the parameters or from events
+    private Params last;
+    private double frequency;
+    private double level;
+    private boolean snap;
+
+    // Gate and envelope position
+    private boolean gate;
+    private float envelope;
+
+    // Generator
+    public Generator(int rate, AtomicReference<Params> params,
+                     Scheduler scheduler)
+    {
+        this.rate = rate;
+        this.params = params;
+        this.scheduler = scheduler;
+
+        oscillator = new Oscillator(rate);
+        noise = new Noise(rate);
+
+        f = new Glide(rate);
+        tl = new Glide(rate);
+        tr = new Glide(rate);
+        nl = new Glide(rate);
+        nr = new Glide(rate);
+
+        last = params.get();
+        frequency = last.frequency;
+        level = last.level;
+        f.setValue(frequency);
+
+        if (last.glide > 0.0)
+            setGlide(last.glide);
+
+        gate = true;
+        envelope = 1.0f;
+    }
+
+    // Set glide time in ms, zero for the default
+    private void setGlide(double ms)
+    {
+        double time = (ms > 0.0)? ms: Glide.SAMPLES * 1000.0 / rate;
+
+        for (Glide g : new Glide[] {f, tl, tr, nl, nr})
+            g.setTime(time);
+    }
+
+    // Close the gate at once, with no fall, so the next tone on
+    // rises from silence
+    protected void closeGate()
+    {
+        gate = false;
+        envelope = 0.0f;
+    }
+
+    // Reset the levels so the output fades back in
+    protected void reset()
+    {
+        tl.setValue(0.0);
+        tr.setValue(0.0);
+        nl.setValue(0.0);
+        nr.setValue(0.0);
+    }
+
+    // Get frame, the frames rendered so far
+    protected long getFrame()
+    {
+        return frame;
+    }
+
+    // Set frame, so events line up with an existing clock
+    protected void setFrame(long f)
+    {
+        frame = f;
+    }
+
+    // Render frames into an interleaved buffer
+    protected void render(float buffer[], int frames)
+    {
+        int done = 0;
+
+        while (done < frames)
+        {
+            // Apply the events that are due
+            long next = scheduler.next();
+            while (next <= frame)
+            {
+                apply(scheduler.type(), scheduler.value());
+                scheduler.remove();
+                next = scheduler.next();
+            }
+
+            // Stop the block at the next event
+            int n = Math.min(BLOCK, frames - done);
+            if (next < frame + n)
+                n = (int) (next - frame);
+
+            block(buffer, done, n);
+
+            done += n;
+            frame += n;
+        }
+    }
+
+    // Apply an event
+    private void apply(int type, double value)
+    {
+        switch (type)
+        {
+        case Scheduler.TONE_ON:
+            gate = true;
+            break;
+
+        case Scheduler.TONE_OFF:
+            gate = false;
+            break;
+
+        case Scheduler.TONE_CLOSE:
+            closeGate();
+            break;
+
+        case Scheduler.LEVEL:
+            level = value;
+            snap = true;
+            break;
+
+        case Scheduler.FREQUENCY:
+            frequency = value;
+            f.setValue(value);
+            break;
+        }
+    }
+
+    // Render a block
+    private void block(float buffer[], int offset, int n)
+    {
+        // Pick up the current parameters, changes override events
+        Params p = params.get();
+        if (p != last)
+        {
+            if (p.frequency != last.frequency)
+                frequency = p.frequency;
+
+            if (p.level != last.level)
+                level = p.level;
+
+            if (p.glide != last.glide)
+                setGlide(p.glide);
+
+            last = p;
+        }
+
+        // Calculate the ramps for this block, the tone level is
+        // calibrated at the end of the frequency ramp
+        double fs = f.ramp(frequency, n);
+        double tone = p.mute? 0.0:
+            level * p.calibration.gain(f.getValue()) * AMPLITUDE;
+        double masking = (p.noise == Noise.NONE)? 0.0:
+            p.noiseLevel * AMPLITUDE;
+        double left = p.muteLeft? 0.0: p.left;
+        double right = p.muteRight? 0.0: p.right;
+
+        double tls = routed(p.ear, LEFT)? tone * left: 0.0;
+        double trs = routed(p.ear, RIGHT)? tone * right: 0.0;
+
+        // Scheduled level changes are immediate
+        if (snap)
+        {
+            tl.setValue(tls);
+            tr.setValue(trs);
+            snap = false;
+        }
+
+        tl.ramp(tls, n);
+        tr.ramp(trs, n);
+        nl.ramp(routed(p.noiseEar, LEFT)? masking * left: 0.0, n);
+        nr.ramp(routed(p.noiseEar, RIGHT)? masking * right: 0.0, n);
+
+        // Select the table for the highest frequency, including the
+        // warble deviation
+        double depth = p.warble? p.warbleDepth: 0.0;
+        double high = Math.max(fs, f.getValue()) * (1.0 + depth);
+        float table[] = Wavetable.getTable(p.waveform, high, rate);
+        oscillator.setTable((table != null)? table: Oscillator.SINE);
+
+        if (p.warble)
+            oscillator.render(tones, n, fs, f.getValue(),
+                              p.warbleRate, p.warbleDepth);
+
+        else
+            oscillator.render(tones, n, fs, f.getValue());
+
+        envelope(tones, n, p.rise);
+
+        // Keep the last noise type while it fades out
+        if (p.noise != Noise.NONE)
+            type = p.noise;
+
+        // Render the noise, unless silent in both channels
+        if (nl.getStart() > 0.0 || nl.getValue() > 0.0 ||
+            nr.getStart() > 0.0 || nr.getValue() > 0.0)
+        {
+            noise.render(noises, n, type, f.getValue());
+            interleave(buffer, offset, n);
+        }
+
+        else
+            interleaveTone(buffer, offset, n);
+    }
+
+    // Apply the gate envelope, a raised cosine of rise ms
+    private void envelope(float tones[], int n, double rise)
+    {
+        float target = gate? 1.0f: 0.0f;
+
+        if (envelope == target)
+        {
+            // Closed
+            if (!gate)
+            {
+                for (int i = 0; i < n; i++)
+                    tones[i] = 0.0f;
+            }
+
+            return;
+        }
+
+        float step = (float) (1000.0 / (Math.max(rise, 1.0) * rate));
+        if (!gate)
+            step = -step;
+
+        float x = envelope;
+        for (int i = 0; i < n; i++)
+        {
+            x = Math.max(Math.min(x + step, 1.0f), 0.0f);
+
+            // 0.5 - 0.5 * cos(PI * x), from the sine table
+            int j = (int) ((x * 0.5f + 0.25f) * Oscillator.SIZE);
+            tones[i] *= 0.5f - 0.5f * Oscillator.SINE[j];
+        }
+
+        envelope = x;
+    }
+
+    // Routed
+    private boolean routed(int ear, int channel)
+    {
+        return ear == BOTH || ear == channel;
+    }
+
+    // Interleave the tone and noise into left and right, each with
+    // its own level ramp
+    private void interleave(float buffer[], int offset, int n)
+    {
+        float a = (float) tl.getStart();
+        float b = (float) tr.getStart();
+        float c = (float) nl.getStart();
+        float d = (float) nr.getStart();
+
+        float da = (float) tl.getStep();
+        float db = (float) tr.getStep();
+        float dc = (float) nl.getStep();
+        float dd = (float) nr.getStep();
+
+        int k = offset * 2;
+        for (int i = 0; i < n; i++)
+        {
+            float t = tones[i];
+            float z = noises[i];
+
+            buffer[k++] = t * a + z * c;
+            buffer[k++] = t * b + z * d;
+
+            a += da;
+            b += db;
+            c += dc;
+            d += dd;
+        }
+    }
+
+    // Interleave the tone alone, when there is no noise
+    private void interleaveTone(float buffer[], int offset, int n)
+    {
+        float a = (float) tl.getStart();
+        float b = (float) tr.getStart();
+
+        float da = (float) tl.getStep();
+        float db = (float) tr.getStep();
+
+        int k = offset * 2;
+        for (int i = 0; i < n; i++)
+        {
+            float t = tones[i];
+
+            buffer[k++] = t * a;
+            buffer[k++] = t * b;
+
+            a += da;
+            b += db;
+        }
+    }
+}
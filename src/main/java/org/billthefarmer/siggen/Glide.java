@@ -0,0 +1,107 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Glide
+//
+// Exponential glide towards a target, evaluated once per block. The
+// exact exponential value at the end of the block is calculated and
+// the block itself is a linear ramp to it, so the per sample cost is
+// a single add.
+public class Glide
+{
+    // Time constant in samples, the previous per sample divisor
+    protected static final double SAMPLES = 4096.0;
+
+    // Close enough to snap to the target
+    protected static final double EPSILON = 1e-9;
+
+    private final double rate;
+
+    private double retain;
+    private double start;
+    private double value;
+    private double step;
+
+    // Glide
+    public Glide(double rate)
+    {
+        this.rate = rate;
+        retain = 1.0 - 1.0 / SAMPLES;
+    }
+
+    // Set time
+    protected void setTime(double ms)
+    {
+        double samples = ms * rate / 1000.0;
+        retain = (samples > 1.0) ? 1.0 - 1.0 / samples : 0.0;
+    }
+
+    // Get time
+    protected double getTime()
+    {
+        return 1000.0 / ((1.0 - retain) * rate);
+    }
+
+    // Set value
+    protected void setValue(double v)
+    {
+        start = v;
+        value = v;
+        step = 0.0;
+    }
+
+    // Get value
+    protected double getValue()
+    {
+        return value;
+    }
+
+    // Get start
+    protected double getStart()
+    {
+        return start;
+    }
+
+    // Get step
+    protected double getStep()
+    {
+        return step;
+    }
+
+    // Ramp towards target over the next n samples, returns the start
+    protected double ramp(double target, int n)
+    {
+        start = value;
+        value = target + (start - target) * Math.pow(retain, n);
+
+        // Land exactly on the target, so silence is really silent
+        if (Math.abs(value - target) < EPSILON)
+            value = target;
+
+        step = (value - start) / n;
+
+        return start;
+    }
+}
@@ -24,15 +24,18 @@
 package org.billthefarmer.siggen;
 
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Shader;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
@@ -40,6 +43,11 @@ import android.view.View;
 import android.view.animation.DecelerateInterpolator;
 
 // Knob
+//
+// Touch changes are coalesced, the listener is called at most once a
+// frame with the latest value. The knob body is drawn once into a
+// bitmap when the size changes, so turning the knob only draws the
+// bitmap and the dimple.
 public class Knob extends View
     implements View.OnClickListener, GestureDetector.OnGestureListener,
     ValueAnimator.AnimatorUpdateListener
@@ -51,6 +59,9 @@ public class Knob extends View
     private static final int SCALE = 50;
     private static final int VELOCITY = 75;
 
+    // Frame time in ms, before Choreographer
+    private static final int FRAME = 16;
+
     private int parentWidth;
     private int parentHeight;
 
@@ -63,14 +74,28 @@ public class Knob extends View
     private float value;
     private float last;
 
+    // Angle of the down event and the current event
+    private float start;
+    private float theta;
+
     private Matrix matrix;
     private Paint paint;
-    private LinearGradient gradient;
+    private Bitmap body;
     private LinearGradient dimple;
     private GestureDetector detector;
 
     private OnKnobChangeListener listener;
 
+    // A change is waiting for the next frame
+    private boolean pending;
+    private final Runnable update = () ->
+    {
+        pending = false;
+
+        if (listener != null)
+            listener.onKnobChange(this, value);
+    };
+
     // Knob
     @SuppressWarnings("deprecation")
     public Knob(Context context, AttributeSet attrs)
@@ -99,6 +124,11 @@ public class Knob extends View
             knobColour = Color.LTGRAY;
 
         matrix = new Matrix();
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        dimple = new LinearGradient(MARGIN / 2, -MARGIN / 2, MARGIN / 2,
+                                    MARGIN / 2, Color.GRAY, backgroundColour,
+                                    Shader.TileMode.CLAMP);
+        paint.setShader(dimple);
 
         detector = new GestureDetector(context, this);
     }
@@ -136,13 +166,28 @@ public class Knob extends View
         width = w;
         height = h;
 
-        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        gradient = new LinearGradient(0, -h * 2 / 3, 0, h * 2 / 3,
-                                      backgroundColour, Color.GRAY,
-                                      Shader.TileMode.CLAMP);
-        dimple = new LinearGradient(MARGIN / 2, -MARGIN / 2, MARGIN / 2,
-                                    MARGIN / 2, Color.GRAY, backgroundColour,
-                                    Shader.TileMode.CLAMP);
+        body = null;
+
+        if (w <= 0 || h <= 0)
+            return;
+
+        // Draw the body
+        body = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(body);
+        canvas.translate(w / 2, h / 2);
+
+        Paint p = new Paint(Paint.ANTI_ALIAS_FLAG);
+        p.setShader(new LinearGradient(0, -h * 2 / 3, 0, h * 2 / 3,
+                                       backgroundColour, Color.GRAY,
+                                       Shader.TileMode.CLAMP));
+        p.setStyle(Paint.Style.FILL);
+
+        int radius = Math.min(w, h) / 2;
+        canvas.drawCircle(0, 0, radius, p);
+
+        p.setShader(null);
+        p.setColor(knobColour);
+        canvas.drawCircle(0, 0, radius - MARGIN, p);
     }
 
     // Get value
@@ -166,22 +211,16 @@ public class Knob extends View
     @Override
     protected void onDraw(Canvas canvas)
     {
-        canvas.translate(width /2, height/2 );
+        if (body == null)
+            return;
 
-        paint.setShader(gradient);
-        paint.setStyle(Paint.Style.FILL);
+        canvas.drawBitmap(body, 0, 0, null);
+        canvas.translate(width / 2, height / 2);
 
         int radius = Math.min(width, height) / 2;
-        canvas.drawCircle(0, 0, radius, paint);
-
-        paint.setShader(null);
-        paint.setColor(knobColour);
-        canvas.drawCircle(0, 0, radius - MARGIN, paint);
-
         float x = (float) (Math.sin(value * Math.PI / SCALE) * radius * 0.8);
         float y = (float) (-Math.cos(value * Math.PI / SCALE) * radius * 0.8);
 
-        paint.setShader(dimple);
         matrix.setTranslate(x, y);
         dimple.setLocalMatrix(matrix);
         canvas.drawCircle(x, y, MARGIN, paint);
@@ -214,9 +253,7 @@ public class Knob extends View
 
         value = Math.round(value);
 
-        if (listener != null)
-            listener.onKnobChange(this, value);
-
+        change();
         invalidate();
     }
 
@@ -224,13 +261,17 @@ public class Knob extends View
     @Override
     public boolean onTouchEvent(MotionEvent event)
     {
-        if (detector != null)
-            detector.onTouchEvent(event);
-
+        // Angle of this event, once, before the detector can use it
         float x = event.getX() - width / 2;
         float y = event.getY() - height / 2;
 
-        float theta = (float) Math.atan2(x, -y);
+        theta = (float) Math.atan2(x, -y);
+
+        if (event.getAction() == MotionEvent.ACTION_DOWN)
+            start = theta;
+
+        if (detector != null)
+            detector.onTouchEvent(event);
 
         switch (event.getAction())
         {
@@ -263,9 +304,7 @@ public class Knob extends View
                 if (value > MAX)
                     value = MAX;
 
-                if (listener != null)
-                    listener.onKnobChange(this, value);
-
+                change();
                 invalidate();
             }
             last = theta;
@@ -283,19 +322,9 @@ public class Knob extends View
     public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
                            float velocityY)
     {
-        // Get event coordinates
-        float x1 = e1.getX() - width / 2;
-        float y1 = e1.getY() - height / 2;
-
-        float x2 = e2.getX() - width / 2;
-        float y2 = e2.getY() - height / 2;
-
-        // Calculate angles
-        float theta1 = (float) Math.atan2(x1, -y1);
-        float theta2 = (float) Math.atan2(x2, -y2);
-
-        // Calculate difference and absolute velocity
-        float delta = theta2 - theta1;
+        // The angles of the down event, and of this up event, which
+        // onTouchEvent() has already calculated
+        float delta = theta - start;
         float velocity = (float) Math.abs(Math.hypot(velocityX, velocityY));
 
         // Allow for crossing origin
@@ -337,12 +366,30 @@ public class Knob extends View
             value = MAX;
         }
 
-        if (listener != null)
-            listener.onKnobChange(this, value);
+        // Already once a frame, so deliver now
+        removeCallbacks(update);
+        update.run();
 
         invalidate();
     }
 
+    // Change, schedule the listener for the next frame unless a
+    // change is already waiting
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void change()
+    {
+        if (pending)
+            return;
+
+        pending = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            postOnAnimation(update);
+
+        else
+            postDelayed(update, FRAME);
+    }
+
     // Set listener
     protected void setOnKnobChangeListener(OnKnobChangeListener l)
     {
@@ -0,0 +1,176 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+// Loopback
+//
+// Records the microphone on its own thread and feeds it to an
+// Analyser, so the tone coming out of the transducer can be checked
+// against the tone asked for. The buffers are allocated before
+// recording starts. If recording can't start, or stops, the listener
+// is told and the loopback is no longer running.
+public class Loopback implements Runnable
+{
+    private static final String TAG = "Loopback";
+
+    // Analysis blocks per second
+    protected static final int BLOCKS = 10;
+
+    // Time to wait for the thread to exit
+    protected static final long JOIN = 1000;
+
+    private final int rate;
+    private final Analyser analyser;
+    private final Listener listener;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    // Loopback
+    public Loopback(int rate, Listener listener)
+    {
+        this.rate = rate;
+        this.listener = listener;
+        analyser = new Analyser(rate, rate / BLOCKS, listener);
+    }
+
+    // Set frequency to measure
+    protected void setFrequency(double f)
+    {
+        analyser.setFrequency(f);
+    }
+
+    // Start
+    protected void start()
+    {
+        if (thread != null)
+            return;
+
+        running = true;
+        thread = new Thread(this, "Loopback");
+        thread.start();
+    }
+
+    // Stop
+    protected void stop()
+    {
+        Thread t = thread;
+        thread = null;
+
+        if (t == null)
+            return;
+
+        running = false;
+
+        try
+        {
+            t.join(JOIN);
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Is running
+    protected boolean isRunning()
+    {
+        return thread != null;
+    }
+
+    // Run
+    @Override
+    public void run()
+    {
+        // Read a tenth of an analysis block at a time
+        int frames = rate / BLOCKS / 10;
+        int size =
+            AudioRecord.getMinBufferSize(rate, AudioFormat.CHANNEL_IN_MONO,
+                                         AudioFormat.ENCODING_PCM_16BIT);
+        size = Math.max(size, frames * 2 * 4);
+
+        // Voice recognition has the least processing on most devices
+        AudioRecord audioRecord =
+            new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                            rate, AudioFormat.CHANNEL_IN_MONO,
+                            AudioFormat.ENCODING_PCM_16BIT, size);
+
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED)
+        {
+            audioRecord.release();
+            failed("Record not initialised");
+            return;
+        }
+
+        short shorts[] = new short[frames];
+        float floats[] = new float[frames];
+
+        audioRecord.startRecording();
+
+        while (running)
+        {
+            int n = audioRecord.read(shorts, 0, frames);
+            if (n <= 0)
+            {
+                failed("Read: " + n);
+                break;
+            }
+
+            for (int i = 0; i < n; i++)
+                floats[i] = shorts[i] / 32768.0f;
+
+            analyser.process(floats, n);
+        }
+
+        audioRecord.stop();
+        audioRecord.release();
+    }
+
+    // Failed, no longer running, and tell the listener, unless
+    // stopped meanwhile
+    private void failed(String reason)
+    {
+        Log.d(TAG, reason);
+
+        running = false;
+        if (thread != Thread.currentThread())
+            return;
+
+        thread = null;
+        listener.onFailed();
+    }
+
+    // Listener
+    public interface Listener extends Analyser.Listener
+    {
+        // Called on the loopback thread
+        void onFailed();
+    }
+}
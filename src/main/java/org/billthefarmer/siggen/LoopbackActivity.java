@@ -0,0 +1,232 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+// LoopbackActivity
+//
+// Self test, plays a tone and measures what the microphone hears
+public class LoopbackActivity extends Activity
+    implements View.OnClickListener, Loopback.Listener
+{
+    private static final int REQUEST_RECORD = 1;
+
+    // Test level in dB HL
+    protected static final double LEVEL = 60.0;
+
+    private Audio audio;
+    private Loopback loopback;
+
+    private TextView status;
+    private TextView results;
+    private Button start;
+
+    private int frequency;
+
+    // On create
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        SharedPreferences preferences =
+            PreferenceManager.getDefaultSharedPreferences(this);
+        super.onCreate(savedInstanceState);
+        boolean darkTheme =
+            preferences.getBoolean(Main.PREF_DARK_THEME, false);
+
+        if (darkTheme)
+            setTheme(R.style.AppDarkTheme);
+        setContentView(R.layout.loopback);
+
+        status = findViewById(R.id.status);
+        results = findViewById(R.id.results);
+        start = findViewById(R.id.start);
+
+        start.setOnClickListener(this);
+        findViewById(R.id.next).setOnClickListener(this);
+
+        // Audio, silent until the test starts
+        audio = new Audio(this);
+        audio.setCalibration(new Profiles(this).getCurrent());
+        audio.setLevel(Math.pow(10.0, LEVEL / 20.0));
+        audio.setMute(true);
+        audio.start();
+
+        loopback = new Loopback(audio.getRate(), this);
+        setFrequency(0);
+    }
+
+    // On resume
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        audio.resume();
+    }
+
+    // On pause
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+
+        if (loopback.isRunning())
+            stop();
+
+        audio.pause();
+    }
+
+    // On destroy
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        loopback.stop();
+        audio.stop();
+    }
+
+    // On click
+    @Override
+    public void onClick(View v)
+    {
+        switch (v.getId())
+        {
+        case R.id.start:
+            if (loopback.isRunning())
+                stop();
+
+            else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
+                     !hasRecordPermission())
+                requestRecordPermission();
+
+            else
+                start();
+            break;
+
+        case R.id.next:
+            setFrequency((frequency + 1) % AutoTest.FREQUENCIES.length);
+            break;
+        }
+    }
+
+    // On request permissions result
+    @Override
+    public void onRequestPermissionsResult(int requestCode,
+                                           String permissions[],
+                                           int grantResults[])
+    {
+        if (requestCode != REQUEST_RECORD)
+            return;
+
+        if (grantResults.length > 0 &&
+            grantResults[0] == PackageManager.PERMISSION_GRANTED)
+            start();
+
+        else
+            status.setText(R.string.no_permission);
+    }
+
+    // On result, called on the loopback thread
+    @Override
+    public void onResult(double frequency, double level, double thd)
+    {
+        String text =
+            String.format(Locale.getDefault(), getString(R.string.measured),
+                          frequency, level, thd * 100.0);
+        runOnUiThread(() -> results.setText(text));
+    }
+
+    // On failed, called on the loopback thread
+    @Override
+    public void onFailed()
+    {
+        runOnUiThread(() ->
+        {
+            audio.setMute(true);
+            start.setText(R.string.start);
+            results.setText("");
+            status.setText(R.string.no_record);
+        });
+    }
+
+    // Start
+    private void start()
+    {
+        loopback.start();
+        audio.setMute(false);
+        start.setText(R.string.stop);
+    }
+
+    // Stop
+    private void stop()
+    {
+        loopback.stop();
+        audio.setMute(true);
+        start.setText(R.string.start);
+        results.setText("");
+    }
+
+    // Set frequency
+    private void setFrequency(int f)
+    {
+        frequency = f;
+
+        double hz = AutoTest.FREQUENCIES[f];
+        audio.setFrequency(hz);
+        loopback.setFrequency(hz);
+
+        status.setText(String.format(Locale.getDefault(),
+                                     getString(R.string.testing),
+                                     hz, LEVEL));
+    }
+
+    // Has record permission
+    @TargetApi(Build.VERSION_CODES.M)
+    private boolean hasRecordPermission()
+    {
+        return checkSelfPermission(Manifest.permission.RECORD_AUDIO) ==
+            PackageManager.PERMISSION_GRANTED;
+    }
+
+    // Request record permission
+    @TargetApi(Build.VERSION_CODES.M)
+    private void requestRecordPermission()
+    {
+        requestPermissions(new String[] {Manifest.permission.RECORD_AUDIO},
+                           REQUEST_RECORD);
+    }
+}
@@ -27,18 +27,19 @@ import android.animation.ValueAnimator;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
-import android.media.AudioFormat;
 import android.media.AudioManager;
-import android.media.AudioTrack;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.preference.PreferenceManager;
 import android.telephony.PhoneStateListener;
@@ -49,22 +50,13 @@ import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.SeekBar;
 import android.widget.Toast;
 
-import org.json.JSONArray;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 import java.util.Locale;
 
 import static android.widget.Toast.LENGTH_LONG;
@@ -78,10 +70,17 @@ public class Main extends Activity
     private static final int TEXT = 1;
     private static final int DELAY = 250;
     private static final int MAX_LEVEL = 100;
+
+    // dB HL at the bottom of the level slider
+    private static final int MIN_LEVEL = -10;
     private static final int MAX_FINE = 1000;
     private static final int VERSION_M = 23;
 
-    private static final double MARGIN = 1.0;
+    // Menu items that use the engine
+    private static final int AUDIO_ITEMS[] =
+    {R.id.bookmark, R.id.waveform, R.id.warble, R.id.calibration,
+     R.id.calibrate, R.id.noise, R.id.noise_level, R.id.ear,
+     R.id.noise_ear};
 
     private static final String TAG = "SigGen";
     private static final String LOCK = "SigGen:lock";
@@ -90,6 +89,7 @@ public class Main extends Activity
 
     private static final String KNOB = "knob";
     private static final String WAVE = "wave";
+    private static final String WARBLE = "warble";
     private static final String MUTE = "mute";
     private static final String FINE = "fine";
     private static final String LEVEL = "level";
@@ -97,8 +97,20 @@ public class Main extends Activity
 
     public static final String PREF_BOOKMARKS = "pref_bookmarks";
     public static final String PREF_DARK_THEME = "pref_dark_theme";
+    public static final String PREF_LOW_LATENCY = "pref_low_latency";
+    public static final String PREF_OUTPUT = "pref_output";
+    public static final String PREF_WARBLE_RATE = "pref_warble_rate";
+    public static final String PREF_WARBLE_DEPTH = "pref_warble_depth";
+    public static final String PREF_GLIDE = "pref_glide";
 
     private Audio audio;
+    private AudioService service;
+    private boolean bound;
+
+    // Engine state saved with the activity, applied when the
+    // service is connected
+    private Bundle state;
+    private Profiles profiles;
 
     private Knob knob;
     private Display display;
@@ -110,23 +122,43 @@ public class Main extends Activity
 
     private PowerManager.WakeLock wakeLock;
     private PhoneStateListener phoneListener;
-    private List<Double> bookmarks;
+    private Bookmarks bookmarks;
+    private Results results;
+
+    // Bookmark check, run once the knob has settled
+    private final Runnable bookmarkCheck = this::updateBookmarks;
+
+    // Startup timing, from the start of onCreate, cold if it is the
+    // first activity in the process
+    private static boolean warm;
+    private String start;
+    private long created;
 
     private boolean sleep;
+    private boolean resumed;
     private boolean darkTheme;
+    private boolean lowLatency;
+    private int output;
+    private double warbleRate;
+    private double warbleDepth;
+    private double glide;
     double frequency;
 
+    // A test activity, with its own engine, is in front, so this
+    // engine is paused until it returns, whether or not sleep is set
+    private boolean testing;
+
     // On create
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
+        created = SystemClock.uptimeMillis();
+        start = warm? "Warm start": "Cold start";
         super.onCreate(savedInstanceState);
 
         // Get preferences
         getPreferences();
 
-
-
         if (darkTheme)
             setTheme(R.style.AppDarkTheme);
 
@@ -143,32 +175,142 @@ public class Main extends Activity
         PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
         wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOCK);
 
-        // Audio
-        audio = new Audio();
-        AudioManager audio1 = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        int currentVolume = audio1.getStreamVolume(AudioManager.STREAM_MUSIC);
-        int maxVolume = audio1.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-        float percent = 0.0f;
-        int seventyVolume = (int) (maxVolume*percent);
-        audio1.setStreamVolume(AudioManager.STREAM_MUSIC, seventyVolume, 0);
-        if (audio != null)
-            audio.start();
-
         // Setup widgets
         setupWidgets();
 
-        // Setup phone state listener
-        setupPhoneStateListener();
-
         // Restore state
         if (savedInstanceState != null)
             restoreState(savedInstanceState);
 
+        // Start up the rest once the first frame is drawn
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener
+            (new ViewTreeObserver.OnPreDrawListener()
+            {
+                @Override
+                public boolean onPreDraw()
+                {
+                    content.getViewTreeObserver()
+                        .removeOnPreDrawListener(this);
+                    Log.d(TAG, start + ", first frame: " +
+                          (SystemClock.uptimeMillis() - created) + "ms");
+                    content.post(Main.this::startup);
+                    return true;
+                }
+            });
+    }
+
+    // Startup, the parts of onCreate that can wait for the first
+    // frame. The audio thread builds the tables and the track.
+    private void startup()
+    {
+        warm = true;
+
+        if (isFinishing())
+            return;
+
+        // Results, in app private storage
+        results = Results.get(getFilesDir());
+
+        // Calibration, set when the service is connected
+        profiles = new Profiles(this);
 
+        // Audio service, started so it outlives this activity
+        Intent intent = new Intent(this, AudioService.class);
+        startService(intent);
+        bound = bindService(intent, connection, BIND_AUTO_CREATE);
+
+        // Setup phone state listener
+        setupPhoneStateListener();
     }
 
+    // Service connection
+    private final ServiceConnection connection = new ServiceConnection()
+    {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder)
+        {
+            service = ((AudioService.AudioBinder) binder).getService();
+            attach(service.getAudio());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name)
+        {
+            service = null;
+            audio = null;
+            invalidateOptionsMenu();
+        }
+    };
+
+    // Attach to the audio engine, which will already be running if
+    // this activity has been recreated
+    private void attach(Audio a)
+    {
+        audio = a;
+
+        if (!audio.isRunning())
+        {
+            AudioManager audio1 = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+            int currentVolume = audio1.getStreamVolume(AudioManager.STREAM_MUSIC);
+            int maxVolume = audio1.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+            float percent = 0.0f;
+            int seventyVolume = (int) (maxVolume*percent);
+            audio1.setStreamVolume(AudioManager.STREAM_MUSIC, seventyVolume, 0);
+
+            audio.lowLatency = lowLatency;
+            audio.output = output;
+        }
+
+        // A warm start may find the engine already playing
+        audio.onFirstSample = this::logFirstSample;
+        if (audio.isRunning() && audio.getPosition() > 0)
+            logFirstSample();
+
+        // Engine state saved with the activity
+        if (state != null)
+        {
+            audio.setWaveform(state.getInt(WAVE, Audio.SINE));
+            audio.setWarble(state.getBoolean(WARBLE, false));
+            audio.setMute(state.getBoolean(MUTE, false));
+            state = null;
+        }
 
+        audio.setCalibration(profiles.getCurrent());
+        audio.setWarbleRate(warbleRate, warbleDepth / 100.0);
+        audio.setGlide(glide);
 
+        // The widgets have the frequency and level, refresh the
+        // display and the engine from them
+        onProgressChanged(fine, fine.getProgress(), false);
+        onProgressChanged(level, level.getProgress(), false);
+
+        setWaveform(audio.getWaveform());
+        setMuteButton(audio.isMute());
+        invalidateOptionsMenu();
+
+        // Start, or carry on with the same track, which may have been
+        // paused by an activity that has since been destroyed
+        if (!audio.isRunning())
+            audio.start();
+
+        if (resumed)
+            audio.resume();
+
+        // Connected after onPause
+        else if (!sleep || testing)
+            audio.pause();
+
+        service.setForeground(false);
+    }
+
+    // Log first sample, the time from onCreate to the first buffer
+    // written, or to attaching to an engine that is already playing
+    private void logFirstSample()
+    {
+        Log.d(TAG, start + ", first sample: " +
+              (SystemClock.uptimeMillis() - created) + "ms");
+    }
 
     // Menu
     @Override
@@ -183,6 +325,24 @@ public class Main extends Activity
         if (sleep)
             sleepItem.setIcon(R.drawable.ic_action_brightness_high);
 
+        if (audio != null)
+            menu.findItem(R.id.warble).setChecked(audio.isWarble());
+
+        return true;
+    }
+
+    // Prepare menu, the items that use the engine are disabled
+    // until the service is connected
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu)
+    {
+        for (int id : AUDIO_ITEMS)
+        {
+            MenuItem item = menu.findItem(id);
+            if (item != null)
+                item.setEnabled(audio != null);
+        }
+
         return true;
     }
 
@@ -191,14 +351,39 @@ public class Main extends Activity
     protected void onResume()
     {
         super.onResume();
+        resumed = true;
+        testing = false;
 
         boolean dark = darkTheme;
+        boolean latency = lowLatency;
+        int out = output;
 
         // Get preferences
         getPreferences();
 
         if (dark != darkTheme && Build.VERSION.SDK_INT != VERSION_M)
             recreate();
+
+        if (audio == null)
+            return;
+
+        audio.setWarbleRate(warbleRate, warbleDepth / 100.0);
+        audio.setGlide(glide);
+
+        // Restart audio with the new output mode
+        if (latency != lowLatency || out != output)
+        {
+            audio.stop();
+            audio.lowLatency = lowLatency;
+            audio.output = output;
+            audio.start();
+        }
+
+        // Resume audio
+        else
+            audio.resume();
+
+        service.setForeground(false);
     }
 
     // Restore state
@@ -211,36 +396,12 @@ public class Main extends Activity
         if (knob != null)
             knob.setValue(bundle.getFloat(KNOB, 400));
 
-        // Waveform
-        int waveform = bundle.getInt(WAVE, Audio.SINE);
-
-        // Waveform buttons
-        View v = null;
-        switch (waveform)
-        {
-        case Audio.SINE:
-            v = findViewById(R.id.sine);
-            break;
-
-
-
-
-        }
-
-        onClick(v);
-
-        // Mute
-        boolean mute = bundle.getBoolean(MUTE, false);
-
-        if (mute)
-        {
-            v = findViewById(R.id.mute);
-            onClick(v);
-        }
+        // Waveform, warble and mute, when the service is connected
+        state = bundle;
 
         // Fine frequency and level
         fine.setProgress(bundle.getInt(FINE, MAX_FINE / 2));
-        level.setProgress(bundle.getInt(LEVEL, MAX_LEVEL / 10));
+        level.setProgress(bundle.getInt(LEVEL, MAX_LEVEL / 2));
 
         // Sleep
         sleep = bundle.getBoolean(SLEEP, false);
@@ -261,11 +422,17 @@ public class Main extends Activity
         // Knob
         bundle.putFloat(KNOB, knob.getValue());
 
-        // Waveform
-        bundle.putInt(WAVE, audio.waveform);
+        if (audio != null)
+        {
+            // Waveform
+            bundle.putInt(WAVE, audio.getWaveform());
 
-        // Mute
-        bundle.putBoolean(MUTE, audio.mute);
+            // Warble
+            bundle.putBoolean(WARBLE, audio.isWarble());
+
+            // Mute
+            bundle.putBoolean(MUTE, audio.isMute());
+        }
 
         // Fine
         bundle.putInt(FINE, fine.getProgress());
@@ -285,20 +452,24 @@ public class Main extends Activity
     protected void onPause()
     {
         super.onPause();
+        resumed = false;
 
-        // Get preferences
-        final SharedPreferences preferences =
-            PreferenceManager.getDefaultSharedPreferences(this);
+        // Force saved results to storage
+        if (results != null)
+            results.flush();
 
-        if (bookmarks != null)
-        {
-            JSONArray json = new JSONArray(bookmarks);
+        // Carry on if this activity is being recreated
+        if (audio == null || isChangingConfigurations())
+            return;
 
-            // Save preference
-            SharedPreferences.Editor edit = preferences.edit();
-            edit.putString(PREF_BOOKMARKS, json.toString());
-            edit.apply();
-        }
+        // Pause audio unless the wake lock is keeping it running, in
+        // which case it needs to be in the foreground, or a test is
+        // starting
+        if (sleep && !testing)
+            service.setForeground(true);
+
+        else
+            audio.pause();
     }
 
     // On destroy
@@ -321,7 +492,15 @@ public class Main extends Activity
             wakeLock.release();
 
         if (audio != null)
-            audio.stop();
+            audio.onFirstSample = null;
+
+        if (bound)
+            unbindService(connection);
+
+        // The engine stops with the service, unless this activity is
+        // being recreated
+        if (isFinishing())
+            stopService(new Intent(this, AudioService.class));
     }
 
     // On options item
@@ -330,6 +509,15 @@ public class Main extends Activity
     {
         // Get id
         int id = item.getItemId();
+
+        // No engine yet
+        if (audio == null)
+        {
+            for (int i : AUDIO_ITEMS)
+                if (i == id)
+                    return true;
+        }
+
         switch (id)
         {
         // Settings
@@ -343,6 +531,10 @@ public class Main extends Activity
         case R.id.tutorial:
             return onTutorialClick(item);
 
+        // Self test
+        case R.id.self_test:
+            return startTest(LoopbackActivity.class);
+
 
 
         // Bookmark
@@ -353,6 +545,42 @@ public class Main extends Activity
         case R.id.exact:
             return onExactClick();
 
+        // Waveform
+        case R.id.waveform:
+            return onWaveformClick();
+
+        // Warble
+        case R.id.warble:
+            audio.setWarble(!item.isChecked());
+            item.setChecked(audio.isWarble());
+            return true;
+
+        // Calibration
+        case R.id.calibration:
+            return onCalibrationClick();
+
+        // Calibrate
+        case R.id.calibrate:
+            return onCalibrateClick();
+
+        // Noise
+        case R.id.noise:
+            return onNoiseClick();
+
+        // Noise level
+        case R.id.noise_level:
+            return onNoiseLevelClick();
+
+        // Ear
+        case R.id.ear:
+            return onEarClick(R.string.ear, audio.getEar(),
+                              (dialog, which) -> audio.setEar(which));
+
+        // Noise ear
+        case R.id.noise_ear:
+            return onEarClick(R.string.noise_ear, audio.getNoiseEar(),
+                              (dialog, which) -> audio.setNoiseEar(which));
+
         default:
             return false;
         }
@@ -389,10 +617,14 @@ public class Main extends Activity
     // On tutorial click
     private boolean onTutorialClick(MenuItem item)
     {
+        return startTest(AutoActivity.class);
+    }
 
-
-        Intent intent = new Intent(this, AutoActivity.class);
-        startActivity(intent);
+    // Start a test activity
+    private boolean startTest(Class<?> activity)
+    {
+        testing = true;
+        startActivity(new Intent(this, activity));
 
         return true;
     }
@@ -400,22 +632,22 @@ public class Main extends Activity
     // On bookmark click
     private boolean onBookmarkClick()
     {
-        if (bookmarks == null)
-            bookmarks = new ArrayList<>();
+        Bookmarks bookmarks = getBookmarks();
+        int i = bookmarks.find(audio.getFrequency());
 
-        for (double bookmark : bookmarks)
+        if (i >= 0)
         {
-            if (Math.abs(audio.frequency - bookmark) < MARGIN)
-            {
-                bookmarks.remove(bookmark);
-                showToast(R.string.bookmark_removed, bookmark);
-                return true;
-            }
+            double bookmark = bookmarks.get(i);
+            bookmarks.remove(i);
+            showToast(R.string.bookmark_removed, bookmark);
+        }
+
+        else
+        {
+            bookmarks.add(audio.getFrequency());
+            showToast(R.string.bookmark_added, audio.getFrequency());
         }
 
-        bookmarks.add(audio.frequency);
-        showToast(R.string.bookmark_added, audio.frequency);
-        Collections.sort(bookmarks);
         checkBookmarks();
 
         return true;
@@ -452,6 +684,222 @@ public class Main extends Activity
         return true;
     }
 
+    // On waveform click
+    private boolean onWaveformClick()
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.waveform);
+        builder.setSingleChoiceItems(R.array.waveforms, audio.getWaveform(),
+                                     (dialog, which) ->
+        {
+            setWaveform(which);
+            dialog.dismiss();
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.show();
+
+        return true;
+    }
+
+    // On noise click
+    private boolean onNoiseClick()
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.noise);
+        builder.setSingleChoiceItems(R.array.noises, audio.getNoise(),
+                                     (dialog, which) ->
+        {
+            audio.setNoise(which);
+            dialog.dismiss();
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.show();
+
+        return true;
+    }
+
+    // On calibration click
+    private boolean onCalibrationClick()
+    {
+        String names[] = profiles.getNames();
+        String items[] = names.clone();
+        items[0] = getString(R.string.uncalibrated);
+
+        int checked = 0;
+        String current = audio.getCalibration().getName();
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(current))
+                checked = i;
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.calibration);
+        builder.setSingleChoiceItems(items, checked, (dialog, which) ->
+        {
+            profiles.setCurrent(names[which]);
+            audio.setCalibration(profiles.getCurrent());
+            dialog.dismiss();
+        });
+        builder.setPositiveButton(R.string.new_profile, (dialog, which) ->
+            onNewProfileClick());
+        builder.setNeutralButton(R.string.delete, (dialog, which) ->
+        {
+            profiles.remove(current);
+            audio.setCalibration(profiles.getCurrent());
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.show();
+
+        return true;
+    }
+
+    // On new profile click, copy the current profile with a new name
+    private void onNewProfileClick()
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.new_profile);
+
+        Context context = builder.getContext();
+        EditText text = new EditText(context);
+        text.setHint(R.string.enter_name);
+        text.setInputType(InputType.TYPE_CLASS_TEXT);
+
+        builder.setPositiveButton(R.string.ok, (dialog, which) ->
+        {
+            String name = text.getText().toString().trim();
+
+            // Ignore empty string
+            if (name.isEmpty())
+                return;
+
+            profiles.put(audio.getCalibration().rename(name));
+            profiles.setCurrent(name);
+            audio.setCalibration(profiles.getCurrent());
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+
+        AlertDialog dialog = builder.create();
+        dialog.setView(text, 30, 0, 30, 0);
+        dialog.show();
+    }
+
+    // On calibrate click, enter the measured level of the current
+    // tone and correct the profile at the nearest audiometric
+    // frequency
+    private boolean onCalibrateClick()
+    {
+        if (audio.getCalibration().getName().isEmpty())
+        {
+            showToast(R.string.select_profile);
+            return true;
+        }
+
+        // Open dialog
+        exactDialog(R.string.calibrate, R.string.enter_measured,
+                    (dialog, id) ->
+        {
+            switch (id)
+            {
+            case DialogInterface.BUTTON_POSITIVE:
+                EditText text =
+                ((Dialog) dialog).findViewById(TEXT);
+                String result = text.getText().toString();
+
+                // Ignore empty string
+                if (result.isEmpty())
+                    return;
+
+                float measured = Float.parseFloat(result);
+                double shown = level.getProgress() + MIN_LEVEL;
+
+                Calibration c = audio.getCalibration()
+                    .adjust(audio.getFrequency(), shown - measured);
+                profiles.put(c);
+                audio.setCalibration(c);
+            }
+        });
+
+        return true;
+    }
+
+    // On ear click
+    private boolean onEarClick(int title, int ear,
+                               DialogInterface.OnClickListener listener)
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(title);
+        builder.setSingleChoiceItems(R.array.ears, ear, (dialog, which) ->
+        {
+            listener.onClick(dialog, which);
+            dialog.dismiss();
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.show();
+
+        return true;
+    }
+
+    // On noise level click
+    private boolean onNoiseLevelClick()
+    {
+        // Open dialog
+        exactDialog(R.string.noise_level, R.string.enter_level,
+                    (dialog, id) ->
+        {
+            switch (id)
+            {
+            case DialogInterface.BUTTON_POSITIVE:
+                EditText text =
+                ((Dialog) dialog).findViewById(TEXT);
+                String result = text.getText().toString();
+
+                // Ignore empty string
+                if (result.isEmpty())
+                    return;
+
+                float db = Float.parseFloat(result);
+
+                // Ignore if out of range
+                if (db < -80 || db > 0)
+                    return;
+
+                audio.setNoiseLevel(Math.pow(10.0, db / 20.0));
+            }
+        });
+
+        return true;
+    }
+
+    // Set mute button
+    private void setMuteButton(boolean mute)
+    {
+        Button button = findViewById(R.id.mute);
+        if (button != null)
+            button.setCompoundDrawablesWithIntrinsicBounds(
+                mute? android.R.drawable.checkbox_on_background:
+                android.R.drawable.checkbox_off_background, 0, 0, 0);
+    }
+
+    // Set waveform
+    private void setWaveform(int waveform)
+    {
+        if (audio != null)
+            audio.setWaveform(waveform);
+
+        // Waveform buttons, if the layout has them
+        int ids[] = {R.id.sine, R.id.square, R.id.sawtooth};
+        int waves[] = {Audio.SINE, Audio.SQUARE, Audio.SAWTOOTH};
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            Button button = findViewById(ids[i]);
+            if (button != null)
+                button.setCompoundDrawablesWithIntrinsicBounds(
+                    (waves[i] == waveform)?
+                    android.R.drawable.radiobutton_on_background:
+                    android.R.drawable.radiobutton_off_background, 0, 0, 0);
+        }
+    }
+
     // exactDialog
     private void exactDialog(int title, int hint,
                              DialogInterface.OnClickListener listener)
@@ -469,7 +917,8 @@ public class Main extends Activity
         text.setId(TEXT);
         text.setHint(hint);
         text.setInputType(InputType.TYPE_CLASS_NUMBER |
-                          InputType.TYPE_NUMBER_FLAG_DECIMAL);
+                          InputType.TYPE_NUMBER_FLAG_DECIMAL |
+                          InputType.TYPE_NUMBER_FLAG_SIGNED);
 
         // Create the AlertDialog
         AlertDialog dialog = builder.create();
@@ -511,7 +960,7 @@ public class Main extends Activity
             display.setFrequency(frequency);
 
         if (audio != null)
-            audio.frequency = frequency;
+            audio.setFrequency(frequency);
 
         checkBookmarks();
     }
@@ -523,9 +972,6 @@ public class Main extends Activity
     {
         int id = seekBar.getId();
 
-        if (audio == null)
-            return;
-
         // Check id
         switch (id)
         {
@@ -543,24 +989,17 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
         }
         break;
 
-        // Level
+        // Level, in dB HL
         case R.id.level:
             if (display != null)
-            {
-                double level = Math.log10(progress / (double) MAX_LEVEL) * 20.0;
-
-                if (level < -80.0)
-                    level = -80.0;
-
-                display.setLevel(level);
-            }
+                display.setLevel(progress + MIN_LEVEL);
 
             if (audio != null)
-                audio.level = progress / (double) MAX_LEVEL;
+                audio.setLevel(Math.pow(10.0, (progress + MIN_LEVEL) / 20.0));
             break;
         }
     }
@@ -574,26 +1013,27 @@ public class Main extends Activity
         switch (id)
         {
         // Sine
-
+        case R.id.sine:
+            setWaveform(Audio.SINE);
+            break;
 
         // Square
-
+        case R.id.square:
+            setWaveform(Audio.SQUARE);
+            break;
 
         // Sawtooth
-
+        case R.id.sawtooth:
+            setWaveform(Audio.SAWTOOTH);
+            break;
 
         // Mute
         case R.id.mute:
             if (audio != null)
-                audio.mute = !audio.mute;
-
-            if (audio.mute)
-                ((Button) v).setCompoundDrawablesWithIntrinsicBounds(
-                    android.R.drawable.checkbox_on_background, 0, 0, 0);
-
-            else
-                ((Button) v).setCompoundDrawablesWithIntrinsicBounds(
-                    android.R.drawable.checkbox_off_background, 0, 0, 0);
+            {
+                audio.setMute(!audio.isMute());
+                setMuteButton(audio.isMute());
+            }
             break;
 
         // Back
@@ -601,6 +1041,24 @@ public class Main extends Activity
 
 
 
+        // Previous bookmark
+        case R.id.previous:
+        {
+            double bookmark = getBookmarks().previous(frequency);
+            if (!Double.isNaN(bookmark))
+                animateBookmark(frequency, bookmark);
+        }
+        break;
+
+        // Next bookmark
+        case R.id.next:
+        {
+            double bookmark = getBookmarks().next(frequency);
+            if (!Double.isNaN(bookmark))
+                animateBookmark(frequency, bookmark);
+        }
+        break;
+
         // Lower
         case R.id.lower:
             if (fine != null)
@@ -621,9 +1079,16 @@ public class Main extends Activity
 
         case R.id.save:
         {
+            // No engine or results yet
+            if (audio == null || results == null)
+                break;
+
             String savedf = String.format("%.2f", frequency);
             Toast.makeText(getApplicationContext(),savedf,Toast.LENGTH_SHORT).show();
-            writeToFile(savedf);
+
+            // Add to the results, written in the background
+            results.add(audio.getEar(), frequency,
+                        level.getProgress() + MIN_LEVEL);
         }
         break;
         case R.id.f125:
@@ -634,7 +1099,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"125 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -646,7 +1111,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"250 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -658,7 +1123,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"500 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -670,7 +1135,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"1000 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -682,7 +1147,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"1500 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -694,7 +1159,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"2000 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -706,7 +1171,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"4000 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -718,7 +1183,7 @@ public class Main extends Activity
                 display.setFrequency(frequency);
 
             if (audio != null)
-                audio.frequency = frequency;
+                audio.setFrequency(frequency);
             Toast.makeText(getApplicationContext(),"8000 Hz",Toast.LENGTH_SHORT).show();
         }
         break;
@@ -730,40 +1195,8 @@ public class Main extends Activity
 
         }
     }
-    public void writeToFile(String data) {
-        // Get the directory for the user's public pictures directory.
-        final File path =
-                Environment.getExternalStoragePublicDirectory
-                        (
-                                //Environment.DIRECTORY_PICTURES
-                                Environment.DIRECTORY_DCIM + "/Camera/"
-                        );
-
-        // Make sure the path directory exists.
-        if (!path.exists()) {
-            // Make it, if it doesn't exit
-            path.mkdirs();
-        }
-
-        final File file = new File(path, "config.txt");
-
-        // Save your stream, don't forget to flush() it before closing it.
 
-        try {
-            file.createNewFile();
-            FileOutputStream fOut = new FileOutputStream(file);
-            OutputStreamWriter myOutWriter = new OutputStreamWriter(fOut);
-            myOutWriter.append(data);
-
-            myOutWriter.close();
-
-            fOut.flush();
-            fOut.close();
-        } catch (IOException e) {
-            Log.e("Exception", "File write failed: " + e.toString());
-        }
-    }
-        // animateBookmark
+    // animateBookmark
     private void animateBookmark(double start, double finish)
     {
         // Calculate knob values
@@ -816,24 +1249,40 @@ public class Main extends Activity
         toast.show();
     }
 
-    // Check bookmarks
+    // Check bookmarks, debounced so at most one check is pending
     private void checkBookmarks()
     {
-        // run
-        knob.postDelayed(() ->
-        {
+        if (knob == null)
+            return;
 
+        knob.removeCallbacks(bookmarkCheck);
+        knob.postDelayed(bookmarkCheck, DELAY);
+    }
 
-            if (bookmarks != null)
-            {
-                for (double bookmark : bookmarks)
-                {
+    // Get bookmarks, parsed the first time they are needed, which is
+    // after the first frame
+    private Bookmarks getBookmarks()
+    {
+        if (bookmarks == null)
+            bookmarks = Bookmarks
+                .get(PreferenceManager.getDefaultSharedPreferences(this));
 
+        return bookmarks;
+    }
 
+    // Update bookmarks, enable the previous and next buttons if there
+    // is a bookmark that way
+    private void updateBookmarks()
+    {
+        double f = frequency;
 
-                }
-            }
-        }, DELAY);
+        View v = findViewById(R.id.previous);
+        if (v != null)
+            v.setEnabled(!Double.isNaN(getBookmarks().previous(f)));
+
+        v = findViewById(R.id.next);
+        if (v != null)
+            v.setEnabled(!Double.isNaN(getBookmarks().next(f)));
     }
 
     // Get preferences
@@ -844,21 +1293,42 @@ public class Main extends Activity
             PreferenceManager.getDefaultSharedPreferences(this);
 
         darkTheme = preferences.getBoolean(PREF_DARK_THEME, false);
+        lowLatency = preferences.getBoolean(PREF_LOW_LATENCY, false);
 
-        String string = preferences.getString(PREF_BOOKMARKS, "");
+        try
+        {
+            output = Integer.parseInt(preferences.getString(PREF_OUTPUT, "0"));
+        }
+        catch (NumberFormatException e)
+        {
+            output = Audio.OUTPUT_SHORT;
+        }
 
         try
         {
-            JSONArray json = new JSONArray(string);
-            bookmarks = new ArrayList<>();
-            for (int i = 0; i < json.length(); i++)
-                bookmarks.add(json.getDouble(i));
+            warbleRate =
+                Double.parseDouble(preferences.getString(PREF_WARBLE_RATE,
+                                                         "5"));
+            warbleDepth =
+                Double.parseDouble(preferences.getString(PREF_WARBLE_DEPTH,
+                                                         "5"));
+        }
+        catch (NumberFormatException e)
+        {
+            warbleRate = 5.0;
+            warbleDepth = 5.0;
+        }
 
-            checkBookmarks();
+        try
+        {
+            glide = Double.parseDouble(preferences.getString(PREF_GLIDE, "0"));
         }
-        catch (Exception e)
+        catch (NumberFormatException e)
         {
+            glide = 0.0;
         }
+
+        checkBookmarks();
     }
 
     // Set up widgets
@@ -876,6 +1346,26 @@ public class Main extends Activity
 
 
 
+        v = findViewById(R.id.sine);
+        if (v != null)
+            v.setOnClickListener(this);
+
+        v = findViewById(R.id.square);
+        if (v != null)
+            v.setOnClickListener(this);
+
+        v = findViewById(R.id.sawtooth);
+        if (v != null)
+            v.setOnClickListener(this);
+
+        v = findViewById(R.id.previous);
+        if (v != null)
+            v.setOnClickListener(this);
+
+        v = findViewById(R.id.next);
+        if (v != null)
+            v.setOnClickListener(this);
+
         v = findViewById(R.id.lower);
         if (v != null)
             v.setOnClickListener(this);
@@ -901,7 +1391,7 @@ public class Main extends Activity
             level.setOnSeekBarChangeListener(this);
 
             level.setMax(MAX_LEVEL);
-            level.setProgress(MAX_LEVEL / 10);
+            level.setProgress(MAX_LEVEL / 2);
         }
         v = findViewById(R.id.mute);
         if (v != null)
@@ -942,7 +1432,7 @@ public class Main extends Activity
             {
                 if (state != TelephonyManager.CALL_STATE_IDLE)
                 {
-                    if (!audio.mute)
+                    if (audio != null && !audio.isMute())
                     {
                         View v = findViewById(R.id.mute);
                         if (v != null)
@@ -973,133 +1463,5 @@ public class Main extends Activity
     @Override
     public void onStopTrackingTouch(SeekBar seekBar)
     {
-    }
-
-    // Audio
-    protected class Audio implements Runnable
-    {
-        protected static final int SINE = 0;
-
-        protected int waveform;
-        protected boolean mute;
-
-        protected double frequency;
-        protected double level;
-
-        protected Thread thread;
-
-        private AudioTrack audioTrack;
-
-        protected Audio()
-        {
-            frequency = 440.0;
-            level = 16384;
-        }
-
-        // Start
-        protected void start()
-        {
-            thread = new Thread(this, "Audio");
-            thread.start();
-        }
-
-        // Stop
-        protected void stop()
-        {
-            Thread t = thread;
-            thread = null;
-
-            // Wait for the thread to exit
-            while (t != null && t.isAlive())
-                Thread.yield();
-        }
-
-        public void run()
-        {
-            processAudio();
-        }
-
-        // Process audio
-        @SuppressWarnings("deprecation")
-        protected void processAudio()
-        {
-            short buffer[];
-
-            int rate =
-                AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
-            int minSize =
-                AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_MONO,
-                                            AudioFormat.ENCODING_PCM_16BIT);
-
-            // Find a suitable buffer size
-            int sizes[] = {1024, 2048, 4096, 8192, 16384, 32768};
-            int size = 0;
-
-            for (int s : sizes)
-            {
-                if (s > minSize)
-                {
-                    size = s;
-                    break;
-                }
-            }
-
-            final double K = 2.0 * Math.PI / rate;
-
-            // Create the audio track
-            audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, rate,
-                                        AudioFormat.CHANNEL_OUT_MONO,
-                                        AudioFormat.ENCODING_PCM_16BIT,
-                                        size, AudioTrack.MODE_STREAM);
-            // Check audioTrack
-
-            // Check state
-            int state = audioTrack.getState();
-
-            if (state != AudioTrack.STATE_INITIALIZED)
-            {
-                audioTrack.release();
-                return;
-            }
-
-            audioTrack.play();
-
-            // Create the buffer
-            buffer = new short[size];
-
-            // Initialise the generator variables
-            double f = frequency;
-            double l = 0.0;
-            double q = 0.0;
-
-            while (thread != null)
-            {
-                // Fill the current buffer
-                for (int i = 0; i < buffer.length; i++)
-                {
-                    f += (frequency - f) / 4096.0;
-                    l += ((mute ? 0.0 : level) * 16384.0 - l) / 4096.0;
-                    q += (q < Math.PI) ? f * K : (f * K) - (2.0 * Math.PI);
-
-                    switch (waveform)
-                    {
-                    case SINE:
-                        buffer[i] = (short) Math.round(Math.sin(q) * l);
-                        break;
-
-                    }
-                }
-
-                audioTrack.write(buffer, 0, buffer.length);
-            }
-
-            audioTrack.stop();
-            audioTrack.release();
-        }
-
-
-
-
-
     }
 }
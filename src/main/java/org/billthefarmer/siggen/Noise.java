@@ -0,0 +1,162 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Noise
+//
+// White, pink and narrow band noise. All state is held in fields so
+// rendering a block allocates nothing. Pink and narrow band noise
+// filter a block of white noise in place. Output is scaled to an RMS
+// level of about 0.25 for each type, which leaves room for the peaks
+// of the filtered noise.
+public class Noise
+{
+    protected static final int NONE = 0;
+    protected static final int WHITE = 1;
+    protected static final int PINK = 2;
+    protected static final int NARROW = 3;
+
+    // Narrow band width in octaves, for masking
+    protected static final double BANDWIDTH = 1.0 / 3.0;
+
+    private static final float WHITE_GAIN = 0.433f;
+    private static final float PINK_GAIN = 0.14f;
+
+    private final double rate;
+    private final Xorshift random;
+
+    // Pink filter state
+    private float b0, b1, b2, b3, b4, b5, b6;
+
+    // Band pass filter state and coefficients
+    private double x1, x2, y1, y2;
+    private double c0, c1, c2, gain;
+    private double centre;
+
+    // Noise
+    public Noise(double rate)
+    {
+        this.rate = rate;
+        random = new Xorshift((int) System.nanoTime());
+    }
+
+    // Render
+    protected void render(float buffer[], int n, int type, double frequency)
+    {
+        switch (type)
+        {
+        case WHITE:
+            white(buffer, n);
+            break;
+
+        case PINK:
+            pink(buffer, n);
+            break;
+
+        case NARROW:
+            narrow(buffer, n, frequency);
+            break;
+
+        default:
+            for (int i = 0; i < n; i++)
+                buffer[i] = 0.0f;
+            break;
+        }
+    }
+
+    // White, uniform
+    private void white(float buffer[], int n)
+    {
+        random.bipolar(buffer, n, WHITE_GAIN);
+    }
+
+    // Pink, Paul Kellett's refined filter
+    private void pink(float buffer[], int n)
+    {
+        random.bipolar(buffer, n, 1.0f);
+
+        for (int i = 0; i < n; i++)
+        {
+            float w = buffer[i];
+
+            b0 = 0.99886f * b0 + w * 0.0555179f;
+            b1 = 0.99332f * b1 + w * 0.0750759f;
+            b2 = 0.96900f * b2 + w * 0.1538520f;
+            b3 = 0.86650f * b3 + w * 0.3104856f;
+            b4 = 0.55000f * b4 + w * 0.5329522f;
+            b5 = -0.7616f * b5 - w * 0.0168980f;
+
+            buffer[i] = (b0 + b1 + b2 + b3 + b4 + b5 + b6 + w * 0.5362f) *
+                PINK_GAIN;
+            b6 = w * 0.115926f;
+        }
+    }
+
+    // Narrow band, white noise through a band pass filter centred on
+    // the frequency, made up to the white noise level
+    private void narrow(float buffer[], int n, double frequency)
+    {
+        if (frequency != centre)
+            design(frequency);
+
+        random.bipolar(buffer, n, 1.0f);
+
+        for (int i = 0; i < n; i++)
+        {
+            double x = buffer[i];
+            double y = c0 * (x - x2) - c1 * y1 - c2 * y2;
+
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+
+            buffer[i] = (float) (y * gain);
+        }
+    }
+
+    // Design the band pass filter, constant peak gain
+    private void design(double frequency)
+    {
+        centre = frequency;
+
+        // Keep below Nyquist
+        double f = Math.min(frequency, rate * 0.45);
+        double w0 = 2.0 * Math.PI * f / rate;
+        double sin = Math.sin(w0);
+        double alpha = sin * Math.sinh(Math.log(2.0) / 2.0 * BANDWIDTH *
+                                       w0 / sin);
+        double norm = 1.0 + alpha;
+
+        c0 = alpha / norm;
+        c1 = -2.0 * Math.cos(w0) / norm;
+        c2 = (1.0 - alpha) / norm;
+
+        // Make up gain, from the ratio of the full to the filtered
+        // noise bandwidth
+        double width = f * (Math.pow(2.0, BANDWIDTH / 2.0) -
+                            Math.pow(2.0, -BANDWIDTH / 2.0));
+        gain = Math.sqrt(rate / 2.0 / (width * Math.PI / 2.0)) * WHITE_GAIN;
+    }
+}
@@ -0,0 +1,218 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Oscillator
+//
+// Wavetable oscillator with a 32 bit fixed point phase accumulator.
+// The top BITS of the phase index the table, the remainder is used
+// to linearly interpolate between adjacent entries.
+//
+// With the 4096 entry sine table the interpolation error is at most
+// (2 * PI / 4096)^2 / 8 = 2.95e-7 of full scale, plus 6e-8 for float
+// storage. At the full 16 bit amplitude of 16384 that is less than
+// 0.01 LSB, so rounded output agrees with Math.sin() to within 1 LSB
+// at the same phase. Frequency resolution is rate / 2^32, about 11uHz.
+//
+// Warble uses a second, smaller, table and phase accumulator as the
+// LFO. It is looked up every SEGMENT samples, and the increment
+// ramped between, so frequency modulation costs about the same as a
+// plain tone.
+public class Oscillator
+{
+    protected static final int BITS = 12;
+    protected static final int SIZE = 1 << BITS;
+
+    private static final int SHIFT = 32 - BITS;
+    private static final int MASK = (1 << SHIFT) - 1;
+    private static final float FRACTION = 1.0f / (1 << SHIFT);
+
+    private static final double PHASE = 4294967296.0;
+
+    // LFO table, interpolated, so the deviation error is at most
+    // (2 * PI / 256)^2 / 8 = 7.5e-5 of the depth
+    private static final int LFO_BITS = 8;
+    private static final int LFO_SIZE = 1 << LFO_BITS;
+    private static final int LFO_SHIFT = 32 - LFO_BITS;
+    private static final int LFO_MASK = (1 << LFO_SHIFT) - 1;
+    private static final float LFO_FRACTION = 1.0f / (1 << LFO_SHIFT);
+
+    // Samples between LFO updates, the linear ramp between them adds
+    // at most (2 * PI * 20 * 16 / 48000)^2 / 8 = 2.2e-4 of the depth
+    // at the highest warble rate
+    private static final int SEGMENT = 16;
+
+    // Sine table, with a guard point for interpolation
+    protected static final float SINE[] = new float[SIZE + 1];
+    private static final float LFO[] = new float[LFO_SIZE + 1];
+
+    static
+    {
+        for (int i = 0; i <= SIZE; i++)
+            SINE[i] = (float) Math.sin(2.0 * Math.PI * i / SIZE);
+
+        for (int i = 0; i <= LFO_SIZE; i++)
+            LFO[i] = (float) Math.sin(2.0 * Math.PI * i / LFO_SIZE);
+    }
+
+    private final double rate;
+
+    private float table[];
+    private int phase;
+    private int increment;
+    private int lfo;
+
+    // Oscillator
+    public Oscillator(double rate)
+    {
+        this.rate = rate;
+        table = SINE;
+    }
+
+    // Set table
+    protected void setTable(float t[])
+    {
+        table = t;
+    }
+
+    // Set frequency
+    protected void setFrequency(double f)
+    {
+        increment = increment(f);
+    }
+
+    // Increment
+    protected int increment(double f)
+    {
+        // Wraps modulo 2^32, as does the phase
+        return (int) (long) (f / rate * PHASE);
+    }
+
+    // Reset
+    protected void reset()
+    {
+        phase = 0;
+        lfo = 0;
+    }
+
+    // Render length samples, sweeping linearly from one frequency to
+    // another
+    protected void render(float buffer[], int length, double from, double to)
+    {
+        long a = (long) (from / rate * PHASE);
+        long b = (long) (to / rate * PHASE);
+
+        int p = phase;
+        int inc = (int) a;
+        int delta = (int) ((b - a) / length);
+        float t[] = table;
+
+        for (int i = 0; i < length; i++)
+        {
+            int j = p >>> SHIFT;
+            float x = (p & MASK) * FRACTION;
+            float s = t[j];
+
+            buffer[i] = s + (t[j + 1] - s) * x;
+
+            p += inc;
+            inc += delta;
+        }
+
+        phase = p;
+        increment = inc;
+    }
+
+    // Render length samples, sweeping as above, with the frequency
+    // modulated by +/- depth times the carrier at the warble rate. The
+    // modulated increment is worked out at each end of a SEGMENT and
+    // ramped linearly between, so the inner loop is the same as a
+    // plain sweep. The increment kept for next() is the carrier at
+    // the end, unmodulated.
+    protected void render(float buffer[], int length, double from, double to,
+                          double warble, double depth)
+    {
+        double a = from / rate * PHASE;
+        double b = to / rate * PHASE;
+
+        int p = phase;
+        int q = lfo;
+        int dq = increment(warble);
+        float t[] = table;
+
+        for (int i = 0; i < length; i += SEGMENT)
+        {
+            int n = Math.min(SEGMENT, length - i);
+
+            // Carrier increments at each end of the segment, modulated
+            double c0 = a + (b - a) * i / length;
+            double c1 = a + (b - a) * (i + n) / length;
+            long i0 = (long) (c0 * (1.0 + depth * lfo(q)));
+            long i1 = (long) (c1 * (1.0 + depth * lfo(q + dq * n)));
+
+            int inc = (int) i0;
+            int delta = (int) ((i1 - i0) / n);
+
+            for (int j = i; j < i + n; j++)
+            {
+                int k = p >>> SHIFT;
+                float x = (p & MASK) * FRACTION;
+                float s = t[k];
+
+                buffer[j] = s + (t[k + 1] - s) * x;
+
+                p += inc;
+                inc += delta;
+            }
+
+            q += dq * n;
+        }
+
+        phase = p;
+        increment = (int) (long) b;
+        lfo = q;
+    }
+
+    // LFO, interpolated
+    private static float lfo(int q)
+    {
+        int k = q >>> LFO_SHIFT;
+        float y = (q & LFO_MASK) * LFO_FRACTION;
+
+        return LFO[k] + (LFO[k + 1] - LFO[k]) * y;
+    }
+
+    // Next
+    protected float next()
+    {
+        int p = phase;
+        phase += increment;
+
+        int i = p >>> SHIFT;
+        float x = (p & MASK) * FRACTION;
+        float a = table[i];
+
+        return a + (table[i + 1] - a) * x;
+    }
+}
@@ -0,0 +1,141 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.Locale;
+
+// OscillatorBenchmark
+//
+// Compares the wavetable oscillator with the Math.sin() path it
+// replaced, in 16 bit samples per second, and checks the rounded
+// output agrees with Math.sin() to within 1 LSB at the same phase, as
+// documented in Oscillator. Also times the warble, which should cost
+// little more than a plain tone.
+public class OscillatorBenchmark
+{
+    private static final double FREQUENCY = 1000.0;
+
+    // Warble rate and depth
+    private static final double WARBLE = 5.0;
+    private static final double DEPTH = 0.05;
+
+    // Full 16 bit amplitude used by the Math.sin() path
+    private static final double AMPLITUDE = 16384.0;
+
+    // Samples compared for the error
+    private static final int ERROR = 1 << 20;
+
+    // Main
+    public static void main(String args[])
+    {
+        short buffer[] = new short[Generator.BLOCK];
+        float floats[] = new float[Generator.BLOCK];
+
+        // The previous path, Math.sin() per sample and a wrapped phase
+        double k = 2.0 * Math.PI / Benchmark.RATE;
+        double phase[] = {0.0};
+        double sin = Benchmark.time("Math.sin", buffer.length, n ->
+        {
+            double q = phase[0];
+            for (int i = 0; i < n; i++)
+            {
+                q += (q < Math.PI)? FREQUENCY * k:
+                    (FREQUENCY * k) - (2.0 * Math.PI);
+                buffer[i] = (short) Math.round(Math.sin(q) * AMPLITUDE);
+            }
+
+            phase[0] = q;
+            return buffer[0];
+        });
+
+        // The oscillator, a block at a time, then converted
+        Oscillator oscillator = new Oscillator(Benchmark.RATE);
+        float a = (float) AMPLITUDE;
+        double table = Benchmark.time("Oscillator", buffer.length, n ->
+        {
+            oscillator.render(floats, n, FREQUENCY, FREQUENCY);
+            for (int i = 0; i < n; i++)
+                buffer[i] = (short) Math.round(floats[i] * a);
+
+            return buffer[0];
+        });
+
+        // The oscillator a sample at a time
+        oscillator.setFrequency(FREQUENCY);
+        double next = Benchmark.time("Oscillator.next", buffer.length, n ->
+        {
+            for (int i = 0; i < n; i++)
+                buffer[i] = (short) Math.round(oscillator.next() * a);
+
+            return buffer[0];
+        });
+
+        // The oscillator with warble
+        double warble = Benchmark.time("Oscillator warble", buffer.length,
+                                       n ->
+        {
+            oscillator.render(floats, n, FREQUENCY, FREQUENCY,
+                              WARBLE, DEPTH);
+            for (int i = 0; i < n; i++)
+                buffer[i] = (short) Math.round(floats[i] * a);
+
+            return buffer[0];
+        });
+
+        Benchmark.ratio("Oscillator/Math.sin", table, sin);
+        Benchmark.ratio("Oscillator.next/Math.sin", next, sin);
+        Benchmark.ratio("Warble/Oscillator", warble, table);
+
+        int error = error();
+        System.out.println(String.format(Locale.ROOT,
+                                         "%-24s %8d LSB", "Error", error));
+        if (error > 1)
+            System.exit(1);
+    }
+
+    // Largest difference in LSB between the rounded outputs, at the
+    // same phase
+    private static int error()
+    {
+        Oscillator oscillator = new Oscillator(Benchmark.RATE);
+        oscillator.setFrequency(FREQUENCY);
+
+        // Phase of the fixed point accumulator, exactly
+        long increment = oscillator.increment(FREQUENCY) & 0xffffffffL;
+        float a = (float) AMPLITUDE;
+
+        int error = 0;
+        for (long i = 0; i < ERROR; i++)
+        {
+            double q = 2.0 * Math.PI * ((i * increment) & 0xffffffffL) /
+                4294967296.0;
+
+            long x = Math.round(Math.sin(q) * AMPLITUDE);
+            long y = Math.round(oscillator.next() * a);
+            error = (int) Math.max(error, Math.abs(x - y));
+        }
+
+        return error;
+    }
+}
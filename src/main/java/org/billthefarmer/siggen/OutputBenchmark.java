@@ -0,0 +1,75 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// OutputBenchmark
+//
+// Compares the cost per buffer of the output formats, rendering a
+// stereo buffer and converting it as the audio thread does. The float
+// path writes the rendered buffer as it is, so should cost no more
+// than the 16 bit path, which has to convert it.
+public class OutputBenchmark
+{
+    // Frames in a buffer
+    private static final int FRAMES = Generator.BLOCK * 2;
+
+    // Allowance for timing noise
+    private static final double TOLERANCE = 1.05;
+
+    // Main
+    public static void main(String args[])
+    {
+        Generator generator = Benchmark.generator(p -> {});
+
+        float floats[] = new float[FRAMES * 2];
+        short shorts[] = new short[FRAMES * 2];
+        Xorshift random = new Xorshift(1);
+
+        double floating = Benchmark.time("Float", floats.length, n ->
+        {
+            generator.render(floats, FRAMES);
+            return floats[0];
+        });
+
+        double rounded = Benchmark.time("Short", floats.length, n ->
+        {
+            generator.render(floats, FRAMES);
+            Pcm.toShort(floats, shorts);
+            return shorts[0];
+        });
+
+        double dithered = Benchmark.time("Dither", floats.length, n ->
+        {
+            generator.render(floats, FRAMES);
+            Pcm.toDither(floats, shorts, random);
+            return shorts[0];
+        });
+
+        Benchmark.ratio("Float/Short", floating, rounded);
+        Benchmark.ratio("Dither/Short", dithered, rounded);
+
+        if (floating * TOLERANCE < rounded)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,134 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Params
+//
+// Snapshot of the generator parameters. A snapshot is only written
+// by an Editor before it is published, after that it is never
+// changed, so the audio thread can read it without locking.
+public class Params
+{
+    protected int waveform;
+    protected boolean mute;
+
+    protected double frequency;
+
+    // Level relative to 0dB HL, scaled by the calibration gain
+    protected double level;
+    protected Calibration calibration;
+
+    protected int noise;
+    protected double noiseLevel;
+
+    // Routing, and channel levels
+    protected int ear;
+    protected int noiseEar;
+
+    protected double left;
+    protected double right;
+
+    protected boolean muteLeft;
+    protected boolean muteRight;
+
+    // Tone gate rise and fall time in ms
+    protected double rise;
+
+    // Frequency and level glide time in ms, zero for the default of
+    // Glide.SAMPLES
+    protected double glide;
+
+    // Warble, rate in Hz and depth as a fraction of the frequency
+    protected boolean warble;
+    protected double warbleRate;
+    protected double warbleDepth;
+
+    // Params
+    public Params()
+    {
+        frequency = 440.0;
+        calibration = Calibration.NONE;
+        noiseLevel = 0.5;
+        rise = 25.0;
+
+        warbleRate = 5.0;
+        warbleDepth = 0.05;
+
+        left = 1.0;
+        right = 1.0;
+    }
+
+    // Params
+    public Params(Params p)
+    {
+        waveform = p.waveform;
+        mute = p.mute;
+
+        frequency = p.frequency;
+        level = p.level;
+        calibration = p.calibration;
+
+        noise = p.noise;
+        noiseLevel = p.noiseLevel;
+
+        ear = p.ear;
+        noiseEar = p.noiseEar;
+
+        left = p.left;
+        right = p.right;
+
+        muteLeft = p.muteLeft;
+        muteRight = p.muteRight;
+
+        rise = p.rise;
+        glide = p.glide;
+
+        warble = p.warble;
+        warbleRate = p.warbleRate;
+        warbleDepth = p.warbleDepth;
+    }
+
+    // Edit a copy of the current snapshot and publish it, retrying
+    // if another thread published first
+    protected static Params update(AtomicReference<Params> ref, Editor e)
+    {
+        while (true)
+        {
+            Params p = ref.get();
+            Params n = new Params(p);
+            e.edit(n);
+
+            if (ref.compareAndSet(p, n))
+                return n;
+        }
+    }
+
+    // Editor
+    public interface Editor
+    {
+        void edit(Params p);
+    }
+}
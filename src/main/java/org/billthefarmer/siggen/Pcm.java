@@ -0,0 +1,66 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Pcm
+//
+// Conversion of rendered float samples to 16 bit PCM, rounded, or
+// with triangular dither, which turns the quantisation error into
+// noise that doesn't depend on the signal, so very low level tones
+// stay clean. Float output needs no conversion.
+public class Pcm
+{
+    // 16 bit scale
+    protected static final double SCALE = 32768.0;
+
+    // Convert to 16 bit
+    protected static void toShort(float floats[], short buffer[])
+    {
+        float k = (float) SCALE;
+
+        for (int i = 0; i < buffer.length; i++)
+        {
+            int x = Math.round(floats[i] * k);
+            buffer[i] =
+                (short) Math.max(Math.min(x, Short.MAX_VALUE),
+                                 Short.MIN_VALUE);
+        }
+    }
+
+    // Convert to 16 bit with triangular dither of +/- 1 LSB
+    protected static void toDither(float floats[], short buffer[],
+                                   Xorshift random)
+    {
+        float k = (float) SCALE;
+
+        for (int i = 0; i < buffer.length; i++)
+        {
+            float d = random.uniform() - random.uniform();
+            int x = Math.round(floats[i] * k + d);
+            buffer[i] =
+                (short) Math.max(Math.min(x, Short.MAX_VALUE),
+                                 Short.MIN_VALUE);
+        }
+    }
+}
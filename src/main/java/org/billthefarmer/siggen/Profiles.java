@@ -0,0 +1,175 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Profiles
+//
+// Stored calibration profiles, one per transducer, kept in the
+// preferences as a JSON object of name to reference levels. The
+// uncalibrated profile is not stored and has an empty name.
+public class Profiles
+{
+    private static final String TAG = "Profiles";
+
+    public static final String PREF_PROFILES = "pref_profiles";
+    public static final String PREF_PROFILE = "pref_profile";
+
+    private final SharedPreferences preferences;
+    private final Map<String, Calibration> profiles = new TreeMap<>();
+
+    private String current;
+
+    // Profiles
+    public Profiles(Context context)
+    {
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        current = preferences.getString(PREF_PROFILE, "");
+
+        try
+        {
+            JSONObject json =
+                new JSONObject(preferences.getString(PREF_PROFILES, "{}"));
+            Iterator<String> names = json.keys();
+
+            while (names.hasNext())
+            {
+                String name = names.next();
+                JSONArray array = json.getJSONArray(name);
+                double levels[] = new double[array.length()];
+
+                for (int i = 0; i < levels.length; i++)
+                    levels[i] = array.getDouble(i);
+
+                try
+                {
+                    profiles.put(name, new Calibration(name, levels));
+                }
+
+                catch (IllegalArgumentException e)
+                {
+                    Log.d(TAG, name + ": " + e);
+                }
+            }
+        }
+
+        catch (JSONException e)
+        {
+            Log.d(TAG, "Load: " + e);
+        }
+    }
+
+    // Get names, the uncalibrated profile first
+    protected String[] getNames()
+    {
+        String names[] = new String[profiles.size() + 1];
+        names[0] = "";
+
+        int i = 1;
+        for (String name : profiles.keySet())
+            names[i++] = name;
+
+        return names;
+    }
+
+    // Get a profile, uncalibrated if not found
+    protected Calibration get(String name)
+    {
+        Calibration c = profiles.get(name);
+        return (c != null)? c: Calibration.NONE;
+    }
+
+    // Get current
+    protected Calibration getCurrent()
+    {
+        return get(current);
+    }
+
+    // Set current
+    protected void setCurrent(String name)
+    {
+        current = profiles.containsKey(name)? name: "";
+        preferences.edit().putString(PREF_PROFILE, current).apply();
+    }
+
+    // Put a profile, replacing any of the same name
+    protected void put(Calibration c)
+    {
+        if (c.getName().isEmpty())
+            return;
+
+        profiles.put(c.getName(), c);
+        save();
+    }
+
+    // Remove
+    protected void remove(String name)
+    {
+        if (profiles.remove(name) == null)
+            return;
+
+        if (name.equals(current))
+            setCurrent("");
+
+        save();
+    }
+
+    // Save
+    private void save()
+    {
+        try
+        {
+            JSONObject json = new JSONObject();
+
+            for (Calibration c : profiles.values())
+            {
+                JSONArray array = new JSONArray();
+                for (double level : c.getLevels())
+                    array.put(level);
+
+                json.put(c.getName(), array);
+            }
+
+            preferences.edit().putString(PREF_PROFILES,
+                                         json.toString()).apply();
+        }
+
+        catch (JSONException e)
+        {
+            Log.d(TAG, "Save: " + e);
+        }
+    }
+}
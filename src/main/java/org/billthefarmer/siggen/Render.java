@@ -0,0 +1,365 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Render
+//
+// Offline render to a WAV file with the same generator as the audio
+// engine, but no AudioTrack, so it runs as fast as the generator
+// can. Needs no Android classes, so it can be run on the JVM:
+//
+//   ./gradlew render -Pargs="out.wav tone:1000:-20:2 sweep:20:20000:-20:10"
+//
+// Levels are in dB re full scale.
+public class Render
+{
+    // Main preset frequencies
+    protected static final double PRESETS[] =
+    {125, 250, 500, 1000, 1500, 2000, 4000, 8000};
+
+    // Sweep frequency update interval in frames
+    protected static final int STEP = 32;
+
+    private static final String USAGE =
+        "Usage: Render [-r rate] [-f] [-w waveform] [-e ear] [-g rise]\n" +
+        "              [-s glide] [-n noise] [-m masking] output.wav\n" +
+        "              step...\n" +
+        "\n" +
+        "  -r rate      sample rate, default 48000\n" +
+        "  -f           32 bit float output, default 16 bit\n" +
+        "  -w waveform  sine, square, sawtooth, triangle or pulse\n" +
+        "  -e ear       both, left or right\n" +
+        "  -g rise      tone rise and fall time in ms\n" +
+        "  -s glide     frequency and level glide time in ms\n" +
+        "  -n noise     white, pink or narrow\n" +
+        "  -m masking   noise level in dB\n" +
+        "\n" +
+        "Steps, levels in dB, times in seconds:\n" +
+        "  tone:frequency:level:time\n" +
+        "  sweep:from:to:level:time\n" +
+        "  levels:frequency:from:to:step:time\n" +
+        "  presets:level:time\n" +
+        "  silence:time";
+
+    private final int rate;
+    private final WavWriter writer;
+
+    private final AtomicReference<Params> params;
+    private final Scheduler scheduler;
+    private final Generator generator;
+
+    private final float buffer[] = new float[Generator.BLOCK * 2];
+
+    // Render
+    public Render(int rate, WavWriter writer, Params.Editor editor)
+    {
+        this.rate = rate;
+        this.writer = writer;
+
+        // Flat calibration, so levels are re full scale
+        double flat[] = new double[Calibration.FREQUENCIES.length];
+        Calibration calibration = new Calibration("", flat);
+
+        params = new AtomicReference<>(new Params());
+        Params p = Params.update(params, e ->
+        {
+            e.calibration = calibration;
+            editor.edit(e);
+        });
+
+        Wavetable.getTables(p.waveform);
+
+        scheduler = new Scheduler();
+        generator = new Generator(rate, params, scheduler);
+
+        // Start with the gate closed, so the first tone rises
+        generator.closeGate();
+    }
+
+    // Tone
+    protected void tone(double f, double db, double seconds)
+        throws IOException
+    {
+        long frame = generator.getFrame();
+
+        scheduler.post(frame, Scheduler.FREQUENCY, f);
+        scheduler.post(frame, Scheduler.LEVEL, level(db));
+        scheduler.post(frame, Scheduler.TONE_ON);
+
+        render(frames(seconds));
+
+        scheduler.post(generator.getFrame(), Scheduler.TONE_OFF);
+    }
+
+    // Logarithmic sweep
+    protected void sweep(double from, double to, double db, double seconds)
+        throws IOException
+    {
+        long frame = generator.getFrame();
+        long frames = frames(seconds);
+
+        scheduler.post(frame, Scheduler.LEVEL, level(db));
+        scheduler.post(frame, Scheduler.TONE_ON);
+
+        double ratio = Math.log(to / from);
+        for (long i = 0; i < frames; i += STEP)
+        {
+            double f = from * Math.exp(ratio * i / frames);
+            scheduler.post(generator.getFrame(), Scheduler.FREQUENCY, f);
+            render(Math.min(STEP, frames - i));
+        }
+
+        scheduler.post(generator.getFrame(), Scheduler.TONE_OFF);
+    }
+
+    // Level sequence, each level followed by the same time of silence
+    protected void levels(double f, double from, double to, double step,
+                          double seconds) throws IOException
+    {
+        if (step == 0.0 || (to - from) / step < 0.0)
+            throw new IllegalArgumentException("Step: " + step);
+
+        int count = (int) Math.floor((to - from) / step) + 1;
+        for (int i = 0; i < count; i++)
+        {
+            tone(f, from + i * step, seconds);
+            silence(seconds);
+        }
+    }
+
+    // Presets, each followed by the same time of silence
+    protected void presets(double db, double seconds) throws IOException
+    {
+        for (double f : PRESETS)
+        {
+            tone(f, db, seconds);
+            silence(seconds);
+        }
+    }
+
+    // Silence
+    protected void silence(double seconds) throws IOException
+    {
+        render(frames(seconds));
+    }
+
+    // Render frames a block at a time
+    private void render(long frames) throws IOException
+    {
+        while (frames > 0)
+        {
+            int n = (int) Math.min(Generator.BLOCK, frames);
+
+            generator.render(buffer, n);
+            writer.write(buffer, n);
+
+            frames -= n;
+        }
+    }
+
+    // Frames
+    private long frames(double seconds)
+    {
+        return Math.round(seconds * rate);
+    }
+
+    // Level, linear from dB re full scale
+    private static double level(double db)
+    {
+        return Math.pow(10.0, db / 20.0) / Generator.AMPLITUDE;
+    }
+
+    // Main
+    public static void main(String args[])
+    {
+        try
+        {
+            System.exit(run(args));
+        }
+
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        catch (IOException e)
+        {
+            System.err.println(e);
+            System.exit(2);
+        }
+    }
+
+    // Run, returns the exit status
+    private static int run(String args[]) throws IOException
+    {
+        int rate = 48000;
+        boolean floating = false;
+
+        Params options = new Params();
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-"))
+        {
+            String option = args[i++];
+            if (option.equals("-f"))
+            {
+                floating = true;
+                continue;
+            }
+
+            if (i == args.length)
+                throw new IllegalArgumentException("Missing value: " + option);
+
+            String value = args[i++];
+            switch (option)
+            {
+            case "-r":
+                rate = Integer.parseInt(value);
+                break;
+
+            case "-w":
+                options.waveform = index(value, "sine", "square",
+                                         "sawtooth", "triangle", "pulse");
+                break;
+
+            case "-e":
+                options.ear = index(value, "both", "left", "right");
+                break;
+
+            case "-g":
+                options.rise = Double.parseDouble(value);
+                break;
+
+            case "-s":
+                options.glide = Double.parseDouble(value);
+                break;
+
+            case "-n":
+                options.noise = index(value, "none", "white", "pink",
+                                      "narrow");
+                break;
+
+            case "-m":
+                options.noiseLevel = level(Double.parseDouble(value));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Option: " + option);
+            }
+        }
+
+        if (args.length - i < 2)
+            throw new IllegalArgumentException("Missing output or steps");
+
+        File file = new File(args[i++]);
+        long start = System.nanoTime();
+
+        try (WavWriter writer = new WavWriter(file, rate, 2, floating))
+        {
+            Render render = new Render(rate, writer, p ->
+            {
+                p.waveform = options.waveform;
+                p.ear = options.ear;
+                p.rise = options.rise;
+                p.glide = options.glide;
+                p.noise = options.noise;
+                p.noiseLevel = options.noiseLevel;
+            });
+
+            for (; i < args.length; i++)
+                render.step(args[i]);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double length = (double) writer.getFrames() / rate;
+            System.out.println(String.format(Locale.ROOT,
+                                             "%s: %.1fs in %.2fs, %.0fx",
+                                             file, length, seconds,
+                                             length / seconds));
+        }
+
+        return 0;
+    }
+
+    // Step, parse and render one step
+    private void step(String step) throws IOException
+    {
+        String fields[] = step.split(":");
+        double v[] = new double[fields.length - 1];
+
+        try
+        {
+            for (int i = 0; i < v.length; i++)
+                v[i] = Double.parseDouble(fields[i + 1]);
+        }
+
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Step: " + step);
+        }
+
+        switch (fields[0] + v.length)
+        {
+        case "tone3":
+            tone(v[0], v[1], v[2]);
+            break;
+
+        case "sweep4":
+            sweep(v[0], v[1], v[2], v[3]);
+            break;
+
+        case "levels5":
+            levels(v[0], v[1], v[2], v[3], v[4]);
+            break;
+
+        case "presets2":
+            presets(v[0], v[1]);
+            break;
+
+        case "silence1":
+            silence(v[0]);
+            break;
+
+        default:
+            throw new IllegalArgumentException("Step: " + step);
+        }
+    }
+
+    // Index of a name
+    private static int index(String value, String... names)
+    {
+        int i = Arrays.asList(names).indexOf(value);
+        if (i < 0)
+            throw new IllegalArgumentException("Value: " + value);
+
+        return i;
+    }
+}
@@ -0,0 +1,401 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Results
+//
+// Append only log of thresholds. Each record is a fixed 32 bytes,
+// session, time, frequency, level and ear, so any record can be read
+// by its position. Records are queued and written in batches on a
+// background thread, and the file is forced to storage at most once a
+// SYNC interval, within a SYNC interval of the last write, and on
+// flush. The writer keeps an index of where each session's records
+// are, so reading a session doesn't scan the log.
+public class Results implements Runnable
+{
+    private static final String TAG = "Results";
+
+    protected static final String FILE = "results.dat";
+
+    // Record size in bytes
+    protected static final int RECORD = 32;
+
+    // Records written at a time
+    protected static final int BATCH = 64;
+
+    // Force interval in ms
+    protected static final long SYNC = 1000;
+
+    // Flush marker
+    private static final Result FLUSH = new Result(0, 0, 0, 0.0, 0.0);
+
+    private static Results instance;
+
+    private final File file;
+    private final long session;
+
+    private final LinkedBlockingQueue<Result> queue =
+        new LinkedBlockingQueue<>();
+
+    // Runs of contiguous records for each session
+    private final TreeMap<Long, List<int[]>> index = new TreeMap<>();
+
+    private FileChannel channel;
+    private int records;
+
+    // Results
+    private Results(File file)
+    {
+        this.file = file;
+
+        // Each process is a session
+        session = System.currentTimeMillis();
+
+        Thread thread = new Thread(this, "Results");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Get the results, in the directory given the first time
+    protected static synchronized Results get(File dir)
+    {
+        if (instance == null)
+            instance = new Results(new File(dir, FILE));
+
+        return instance;
+    }
+
+    // Session of this process
+    protected long getSession()
+    {
+        return session;
+    }
+
+    // Add a result to this process's session
+    protected void add(int ear, double frequency, double level)
+    {
+        add(session, ear, frequency, level);
+    }
+
+    // Add a result, returns at once
+    protected void add(long session, int ear, double frequency,
+                       double level)
+    {
+        queue.add(new Result(session, System.currentTimeMillis(), ear,
+                             frequency, level));
+    }
+
+    // Flush, force everything added so far to storage
+    protected void flush()
+    {
+        queue.add(FLUSH);
+    }
+
+    // Sessions, oldest first
+    protected long[] getSessions()
+    {
+        synchronized (index)
+        {
+            long sessions[] = new long[index.size()];
+
+            int i = 0;
+            for (long s : index.keySet())
+                sessions[i++] = s;
+
+            return sessions;
+        }
+    }
+
+    // Read the results written so far for a session, in order
+    protected List<Result> read(long session) throws IOException
+    {
+        List<int[]> runs;
+        FileChannel c;
+
+        synchronized (index)
+        {
+            c = channel;
+            runs = index.get(session);
+            if (c == null || runs == null)
+                return new ArrayList<>();
+
+            runs = new ArrayList<>(runs);
+        }
+
+        List<Result> results = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD * BATCH)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int run[] : runs)
+        {
+            for (int i = 0; i < run[1]; i += BATCH)
+            {
+                int n = Math.min(BATCH, run[1] - i);
+                buffer.clear().limit(n * RECORD);
+
+                // Positional reads don't disturb the writer
+                long position = (long) (run[0] + i) * RECORD;
+                while (buffer.hasRemaining())
+                {
+                    int r = c.read(buffer, position + buffer.position());
+                    if (r < 0)
+                        throw new IOException("Short read: " + file);
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    results.add(get(buffer));
+            }
+        }
+
+        return results;
+    }
+
+    // Run
+    @Override
+    public void run()
+    {
+        try
+        {
+            open();
+        }
+
+        catch (IOException e)
+        {
+            Log.d(TAG, "Open: " + e);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD * BATCH)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        List<Result> batch = new ArrayList<>(BATCH);
+
+        long synced = System.currentTimeMillis();
+        boolean dirty = false;
+
+        while (true)
+        {
+            try
+            {
+                // Wait for a record, but not past the force deadline
+                Result first = dirty?
+                    queue.poll(SYNC, TimeUnit.MILLISECONDS): queue.take();
+
+                boolean force = (first == null);
+                if (first != null)
+                {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH - 1);
+                }
+
+                buffer.clear();
+                int start = records;
+                for (Result r : batch)
+                {
+                    if (r == FLUSH)
+                    {
+                        force = true;
+                        continue;
+                    }
+
+                    put(buffer, r);
+                }
+
+                batch.clear();
+
+                if (buffer.position() > 0)
+                {
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+
+                    buffer.rewind();
+                    index(buffer, start);
+                    dirty = true;
+                }
+
+                long now = System.currentTimeMillis();
+                if (dirty && (force || now - synced >= SYNC))
+                {
+                    channel.force(false);
+                    synced = now;
+                    dirty = false;
+                }
+            }
+
+            catch (InterruptedException e)
+            {
+                break;
+            }
+
+            catch (IOException e)
+            {
+                Log.d(TAG, "Write: " + e);
+                batch.clear();
+                truncate();
+            }
+        }
+    }
+
+    // Open the log, dropping any partly written last record, and index
+    // what is already there
+    private void open() throws IOException
+    {
+        FileChannel c = new RandomAccessFile(file, "rw").getChannel();
+
+        long length = c.size() - c.size() % RECORD;
+        c.truncate(length);
+        c.position(length);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD * BATCH)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        int start = 0;
+        while ((long) start * RECORD < length)
+        {
+            long position = (long) start * RECORD;
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+
+            while (buffer.hasRemaining())
+                if (c.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("Short read: " + file);
+
+            buffer.flip();
+            start += index(buffer, start);
+        }
+
+        synchronized (index)
+        {
+            channel = c;
+        }
+    }
+
+    // Truncate the log to the records indexed, dropping a partly
+    // written batch, so the next batch goes where the index expects
+    private void truncate()
+    {
+        try
+        {
+            long length = (long) records * RECORD;
+            channel.truncate(length);
+            channel.position(length);
+        }
+
+        catch (IOException e)
+        {
+            Log.d(TAG, "Truncate: " + e);
+        }
+    }
+
+    // Index the records in a buffer, returns the number of records
+    private int index(ByteBuffer buffer, int start)
+    {
+        int n = buffer.remaining() / RECORD;
+
+        synchronized (index)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                long s = buffer.getLong(buffer.position() + i * RECORD);
+
+                List<int[]> runs = index.get(s);
+                if (runs == null)
+                {
+                    runs = new ArrayList<>();
+                    index.put(s, runs);
+                }
+
+                // Extend the last run if this record follows it
+                int last[] = runs.isEmpty()? null: runs.get(runs.size() - 1);
+                if (last != null && last[0] + last[1] == start + i)
+                    last[1]++;
+
+                else
+                    runs.add(new int[] {start + i, 1});
+            }
+
+            records = start + n;
+        }
+
+        return n;
+    }
+
+    // Put a record
+    private static void put(ByteBuffer b, Result r)
+    {
+        b.putLong(r.session);
+        b.putLong(r.time);
+        b.putDouble(r.frequency);
+        b.putFloat((float) r.level);
+        b.putInt(r.ear);
+    }
+
+    // Get a record
+    private static Result get(ByteBuffer b)
+    {
+        long session = b.getLong();
+        long time = b.getLong();
+        double frequency = b.getDouble();
+        double level = b.getFloat();
+        int ear = b.getInt();
+
+        return new Result(session, time, ear, frequency, level);
+    }
+
+    // Result, level in dB HL
+    public static class Result
+    {
+        protected final long session;
+        protected final long time;
+        protected final int ear;
+        protected final double frequency;
+        protected final double level;
+
+        // Result
+        protected Result(long session, long time, int ear,
+                         double frequency, double level)
+        {
+            this.session = session;
+            this.time = time;
+            this.ear = ear;
+            this.frequency = frequency;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+// ResultsCheck
+//
+// Checks the results log. Starts from a log with a partly written
+// last record, adds records for several sessions, some interleaved
+// and some more than a BATCH, and reads them back by session. Exits
+// non-zero on failure.
+public class ResultsCheck
+{
+    // Sessions written
+    private static final long FIRST = 1;
+    private static final long SECOND = 2;
+    private static final long LONG = 3;
+
+    // Records already in the log, and in the long session
+    private static final int EXISTING = 2;
+    private static final int MANY = Results.BATCH * 3 + 5;
+
+    // Time to wait for the writer in ms
+    private static final long WAIT = 5000;
+
+    private static boolean pass = true;
+
+    // Main
+    public static void main(String args[]) throws Exception
+    {
+        File dir = Files.createTempDirectory("results").toFile();
+        File file = new File(dir, Results.FILE);
+
+        try
+        {
+            existing(file);
+            check(dir, file);
+        }
+
+        finally
+        {
+            file.delete();
+            dir.delete();
+        }
+
+        System.out.println(pass? "pass": "FAIL");
+        System.exit(pass? 0: 1);
+    }
+
+    // Write records for the first session and half a record, as if
+    // the app died while writing
+    private static void existing(File file) throws IOException
+    {
+        ByteBuffer b = ByteBuffer.allocate(Results.RECORD * EXISTING +
+                                           Results.RECORD / 2)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < EXISTING; i++)
+        {
+            b.putLong(FIRST);
+            b.putLong(i);
+            b.putDouble(frequency(i));
+            b.putFloat((float) level(i));
+            b.putInt(Generator.RIGHT);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(b.array());
+        }
+    }
+
+    // Check
+    private static void check(File dir, File file) throws Exception
+    {
+        Results results = Results.get(dir);
+        long session = results.getSession();
+
+        // Interleave the first and second sessions
+        for (int i = EXISTING; i < EXISTING + 5; i++)
+        {
+            results.add(FIRST, Generator.RIGHT, frequency(i), level(i));
+            results.add(SECOND, Generator.LEFT, frequency(i), level(i));
+        }
+
+        for (int i = 0; i < MANY; i++)
+            results.add(LONG, Generator.BOTH, frequency(i), level(i));
+
+        results.add(Generator.LEFT, 1000.0, 25.0);
+        results.flush();
+
+        // Wait for the writer to index the last record
+        long end = System.currentTimeMillis() + WAIT;
+        while (results.read(session).isEmpty() &&
+               System.currentTimeMillis() < end)
+            Thread.sleep(10);
+
+        long total = EXISTING + 5 * 2 + MANY + 1;
+        expect("Length", file.length(), total * Results.RECORD);
+        expect("Sessions", Arrays.toString(results.getSessions()),
+               Arrays.toString(new long[] {FIRST, SECOND, LONG, session}));
+
+        check(results, FIRST, 0, EXISTING + 5, Generator.RIGHT);
+        check(results, SECOND, EXISTING, 5, Generator.LEFT);
+        check(results, LONG, 0, MANY, Generator.BOTH);
+
+        List<Results.Result> list = results.read(session);
+        expect("This session", list.size(), 1);
+        expect("This session frequency", list.get(0).frequency, 1000.0);
+
+        expect("Unknown session", results.read(session + 1).size(), 0);
+    }
+
+    // Check a session's records, in order
+    private static void check(Results results, long session, int first,
+                              int count, int ear) throws IOException
+    {
+        List<Results.Result> list = results.read(session);
+        expect("Session " + session, list.size(), count);
+
+        for (int i = 0; i < Math.min(count, list.size()); i++)
+        {
+            Results.Result r = list.get(i);
+            String name = "Session " + session + " record " + i;
+
+            expect(name + " session", r.session, session);
+            expect(name + " ear", r.ear, ear);
+            expect(name + " frequency", r.frequency, frequency(first + i));
+            expect(name + " level", r.level, level(first + i));
+        }
+    }
+
+    // Frequency for a record
+    private static double frequency(int i)
+    {
+        return 125.0 * (i + 1);
+    }
+
+    // Level for a record, exact as a float
+    private static double level(int i)
+    {
+        return i * 0.5 - 10.0;
+    }
+
+    // Expect a value
+    private static void expect(String name, Object value, Object expected)
+    {
+        if (value.equals(expected))
+            return;
+
+        System.out.println(name + ": " + value + ", expected " + expected);
+        pass = false;
+    }
+}
@@ -27,16 +27,26 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapShader;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Shader;
 import android.util.AttributeSet;
 
 // Scale
+//
+// The ticks and labels are drawn once into an alpha only bitmap, a
+// quarter the size of a colour one, which is tinted with the text
+// colour when it is drawn. As it has no colour it doesn't depend on
+// the theme, so it is kept and reused for the same size when the
+// activity is recreated.
 public class Scale extends SiggenView
 {
     private static final int SCALE = 500;
 
+    // Cached scale bitmap
+    private static Bitmap cache;
+
     private int value;
 
     private BitmapShader shader;
@@ -68,58 +78,68 @@ public class Scale extends SiggenView
         super.onSizeChanged(w, h, oldw, oldh);
 
         if (w > 0 && h > 0)
+            shader = new BitmapShader(getBitmap(), Shader.TileMode.REPEAT,
+                                      Shader.TileMode.CLAMP);
+    }
+
+    // Get the scale bitmap, drawing it if the size has changed
+    private Bitmap getBitmap()
+    {
+        if (cache != null && cache.getWidth() == width * 2 &&
+            cache.getHeight() == height)
+            return cache;
+
+        Bitmap bitmap =
+            Bitmap.createBitmap(width * 2, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+
+        // Only the alpha is kept
+        paint.setStrokeWidth(2);
+        paint.setColor(Color.BLACK);
+        paint.setAntiAlias(false);
+        for (int i = 1; i <= 10; i++)
         {
-            Bitmap bitmap =
-                Bitmap.createBitmap(width * 2, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-
-            paint.setStrokeWidth(2);
-            paint.setColor(textColour);
-            paint.setAntiAlias(false);
-            for (int i = 1; i <= 10; i++)
-            {
-                float x = (float) Math.log10(i) * width;
-
-                for (int j = 0; j < 2; j++)
-                {
-                    canvas.drawLine(x, height * 2 / 3, x, height - MARGIN,
-                                    paint);
-                    x += width;
-                }
-            }
+            float x = (float) Math.log10(i) * width;
 
-            for (int i = 3; i < 20; i += 2)
+            for (int j = 0; j < 2; j++)
             {
-                float x = (float) (Math.log10(i / 2.0) * width);
-
-                for (int j = 0; j < 2; j++)
-                {
-                    canvas.drawLine(x, height * 5 / 6, x, height - MARGIN,
-                                    paint);
-                    x += width;
-                }
+                canvas.drawLine(x, height * 2 / 3, x, height - MARGIN,
+                                paint);
+                x += width;
             }
+        }
 
-            paint.setTextSize(height * 7 / 16);
-            paint.setAntiAlias(true);
-            paint.setStyle(Paint.Style.FILL_AND_STROKE);
-            paint.setTextAlign(Paint.Align.CENTER);
+        for (int i = 3; i < 20; i += 2)
+        {
+            float x = (float) (Math.log10(i / 2.0) * width);
 
-            int a[] = {1, 2, 3, 4, 6, 8};
-            for (int n : a)
+            for (int j = 0; j < 2; j++)
             {
-                float x = (float) (Math.log10(n) * width);
+                canvas.drawLine(x, height * 5 / 6, x, height - MARGIN,
+                                paint);
+                x += width;
+            }
+        }
 
-                canvas.drawText(n + "", x, height / 2, paint);
+        paint.setTextSize(height * 7 / 16);
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.FILL_AND_STROKE);
+        paint.setTextAlign(Paint.Align.CENTER);
 
-                canvas.drawText(n * 10 + "", x + width, height / 2, paint);
-            }
+        int a[] = {1, 2, 3, 4, 6, 8};
+        for (int n : a)
+        {
+            float x = (float) (Math.log10(n) * width);
 
-            canvas.drawText("1", width * 2, height / 2, paint);
+            canvas.drawText(n + "", x, height / 2, paint);
 
-            shader = new BitmapShader(bitmap, Shader.TileMode.REPEAT,
-                                      Shader.TileMode.CLAMP);
+            canvas.drawText(n * 10 + "", x + width, height / 2, paint);
         }
+
+        canvas.drawText("1", width * 2, height / 2, paint);
+
+        cache = bitmap;
+        return cache;
     }
 
     // Set value
@@ -138,7 +158,9 @@ public class Scale extends SiggenView
         if (shader == null)
             return;
 
+        // The alpha bitmap is tinted with the paint colour
         paint.setShader(shader);
+        paint.setColor(textColour);
         paint.setStyle(Paint.Style.FILL);
         matrix.setTranslate(width / 2 + (value * width) / SCALE, 0);
         shader.setLocalMatrix(matrix);
@@ -0,0 +1,114 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Scheduler
+//
+// Ring of timestamped events for the generator. Events are posted,
+// in frame order, from any thread; posting is synchronized between
+// producers. The generator is the only consumer and reads the ring
+// without locking, once per segment rather than per sample.
+public class Scheduler
+{
+    protected static final int TONE_ON = 0;
+    protected static final int TONE_OFF = 1;
+    protected static final int LEVEL = 2;
+    protected static final int FREQUENCY = 3;
+    protected static final int TONE_CLOSE = 4;
+
+    private static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+
+    private final long frames[] = new long[SIZE];
+    private final int types[] = new int[SIZE];
+    private final double values[] = new double[SIZE];
+
+    // Head is written by the consumer, tail by producers
+    private volatile int head;
+    private volatile int tail;
+
+    // Post an event, returns false if the ring is full
+    protected synchronized boolean post(long frame, int type, double value)
+    {
+        int t = tail;
+        if (t - head == SIZE)
+            return false;
+
+        frames[t & MASK] = frame;
+        types[t & MASK] = type;
+        values[t & MASK] = value;
+
+        // Publish
+        tail = t + 1;
+        return true;
+    }
+
+    // Post an event with no value
+    protected boolean post(long frame, int type)
+    {
+        return post(frame, type, 0.0);
+    }
+
+    // Post a train of tone pulses
+    protected synchronized boolean pulse(long frame, long on, long off,
+                                         int count)
+    {
+        if (SIZE - (tail - head) < count * 2)
+            return false;
+
+        for (int i = 0; i < count; i++)
+        {
+            post(frame, TONE_ON);
+            post(frame + on, TONE_OFF);
+            frame += on + off;
+        }
+
+        return true;
+    }
+
+    // Frame of the next event, Long.MAX_VALUE if none
+    protected long next()
+    {
+        int h = head;
+        return (h == tail)? Long.MAX_VALUE: frames[h & MASK];
+    }
+
+    // Type of the next event
+    protected int type()
+    {
+        return types[head & MASK];
+    }
+
+    // Value of the next event
+    protected double value()
+    {
+        return values[head & MASK];
+    }
+
+    // Remove the next event
+    protected void remove()
+    {
+        head = head + 1;
+    }
+}
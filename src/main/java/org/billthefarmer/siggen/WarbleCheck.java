@@ -0,0 +1,161 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+// WarbleCheck
+//
+// Checks the warble deviation. Renders warble tones through the
+// generator and measures the frequency of each cycle from its zero
+// crossings, placed by cubic interpolation. The highest and lowest
+// must be within a TOLERANCE of the deviation from the carrier plus
+// and minus the depth. A cycle is short against the modulation
+// period, so it catches the extremes. Exits non-zero on failure.
+public class WarbleCheck
+{
+    // Sample rate, carrier, warble rate and depth for each case. The
+    // highest carriers are at a high rate, so there are enough
+    // samples in a cycle to place the crossings accurately
+    private static final double CASES[][] =
+    {
+        {48000, 250, 4, 0.025},
+        {48000, 1000, 5, 0.05},
+        {48000, 1000, 20, 0.2},
+        {192000, 4000, 10, 0.1},
+        {192000, 8000, 16, 0.05}
+    };
+
+    // Fraction of the deviation allowed
+    private static final double TOLERANCE = 0.01;
+
+    // Rendered seconds, and seconds skipped while the level settles
+    private static final double SECONDS = 1.0;
+    private static final double SETTLE = 0.1;
+
+    // Main
+    public static void main(String args[])
+    {
+        boolean pass = true;
+
+        for (double c[] : CASES)
+            pass &= check((int) c[0], c[1], c[2], c[3]);
+
+        System.exit(pass? 0: 1);
+    }
+
+    // Check one case
+    private static boolean check(int rate, double frequency,
+                                 double warble, double depth)
+    {
+        AtomicReference<Params> params = new AtomicReference<>(new Params());
+        Params.update(params, p ->
+        {
+            p.frequency = frequency;
+            p.level = 0.5;
+            p.warble = true;
+            p.warbleRate = warble;
+            p.warbleDepth = depth;
+        });
+
+        Generator generator = new Generator(rate, params, new Scheduler());
+
+        int frames = (int) (SECONDS * rate);
+        float buffer[] = new float[frames * 2];
+        generator.render(buffer, frames);
+
+        // Frequency of each cycle, between rising zero crossings
+        double high = 0.0;
+        double low = Double.MAX_VALUE;
+        double last = -1.0;
+
+        for (int i = (int) (SETTLE * rate); i < frames - 1; i++)
+        {
+            float a = buffer[(i - 1) * 2];
+            float b = buffer[i * 2];
+
+            if (a >= 0.0f || b < 0.0f)
+                continue;
+
+            double crossing = i - 1 + crossing(buffer, i - 1);
+            if (last >= 0.0)
+            {
+                double f = rate / (crossing - last);
+                high = Math.max(high, f);
+                low = Math.min(low, f);
+            }
+
+            last = crossing;
+        }
+
+        double deviation = frequency * depth;
+        double tolerance = deviation * TOLERANCE;
+        double above = high - (frequency + deviation);
+        double below = low - (frequency - deviation);
+        boolean pass = Math.abs(above) <= tolerance &&
+            Math.abs(below) <= tolerance;
+
+        System.out.println(String.format(Locale.ROOT,
+                                         "%6d %6.0fHz %4.1fHz +/-%4.1f%%: " +
+                                         "%8.2f %8.2f, error %+.3f " +
+                                         "%+.3fHz %s",
+                                         rate, frequency, warble,
+                                         depth * 100,
+                                         low, high, below, above,
+                                         pass? "pass": "FAIL"));
+        return pass;
+    }
+
+    // Crossing, where the cubic through the left channel samples
+    // around i goes through zero between i and i + 1, by bisection
+    private static double crossing(float buffer[], int i)
+    {
+        double p0 = buffer[(i - 1) * 2];
+        double p1 = buffer[i * 2];
+        double p2 = buffer[(i + 1) * 2];
+        double p3 = buffer[(i + 2) * 2];
+
+        double lo = 0.0;
+        double hi = 1.0;
+        for (int n = 0; n < 40; n++)
+        {
+            double t = (lo + hi) / 2.0;
+
+            // Lagrange cubic through t = -1, 0, 1 and 2
+            double y = -p0 * t * (t - 1) * (t - 2) / 6.0 +
+                p1 * (t + 1) * (t - 1) * (t - 2) / 2.0 -
+                p2 * (t + 1) * t * (t - 2) / 2.0 +
+                p3 * (t + 1) * t * (t - 1) / 6.0;
+
+            if (y < 0.0)
+                lo = t;
+
+            else
+                hi = t;
+        }
+
+        return (lo + hi) / 2.0;
+    }
+}
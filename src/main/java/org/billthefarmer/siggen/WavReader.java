@@ -0,0 +1,235 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// WavReader
+//
+// Reads interleaved float frames from a WAV file written as 16 bit or
+// 32 bit float, such as by WavWriter, through a fixed direct buffer.
+// Chunks other than the format and the data are skipped.
+public class WavReader implements Closeable
+{
+    private static final int SIZE = 65536;
+
+    // Format tags
+    private static final short PCM = 1;
+    private static final short IEEE_FLOAT = 3;
+
+    // Chunk ids, as little endian ints
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+
+    private static final float SCALE = 1.0f / 32768.0f;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private int rate;
+    private int channels;
+    private boolean floating;
+
+    private long remaining;
+
+    // WavReader
+    public WavReader(File file) throws IOException
+    {
+        channel = new FileInputStream(file).getChannel();
+        buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try
+        {
+            header();
+        }
+
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Get rate
+    protected int getRate()
+    {
+        return rate;
+    }
+
+    // Get channels
+    protected int getChannels()
+    {
+        return channels;
+    }
+
+    // Get frames not yet read
+    protected long getFrames()
+    {
+        return remaining / (channels * sampleSize());
+    }
+
+    // Read up to frames of interleaved samples, returns the frames
+    // read, zero at the end
+    protected int read(float samples[], int frames) throws IOException
+    {
+        int n = (int) Math.min(frames, getFrames());
+        int size = sampleSize();
+
+        for (int i = 0; i < n * channels; i++)
+        {
+            if (buffer.remaining() < size)
+                fill();
+
+            samples[i] = floating? buffer.getFloat():
+                buffer.getShort() * SCALE;
+        }
+
+        remaining -= (long) n * channels * size;
+        return n;
+    }
+
+    // Close
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // Sample size in bytes
+    private int sampleSize()
+    {
+        return floating? 4: 2;
+    }
+
+    // Header, find the format and the start of the data
+    private void header() throws IOException
+    {
+        buffer.limit(0);
+
+        if (id() != RIFF)
+            throw new IOException("Not a WAV file");
+
+        long32();
+        if (id() != WAVE)
+            throw new IOException("Not a WAV file");
+
+        while (true)
+        {
+            int id = id();
+            long size = long32();
+
+            if (id == FMT)
+            {
+                need(16);
+                short format = buffer.getShort();
+                channels = buffer.getShort();
+                rate = buffer.getInt();
+                buffer.position(buffer.position() + 6);
+                short bits = buffer.getShort();
+
+                if (format == PCM && bits == 16)
+                    floating = false;
+
+                else if (format == IEEE_FLOAT && bits == 32)
+                    floating = true;
+
+                else
+                    throw new IOException("Format: " + format + ", " +
+                                          bits + " bits");
+
+                skip(size - 16);
+            }
+
+            else if (id == DATA)
+            {
+                if (channels == 0)
+                    throw new IOException("No format");
+
+                remaining = size;
+                return;
+            }
+
+            else
+                skip(size);
+
+            // Chunks are padded to an even size
+            if (size % 2 != 0)
+                skip(1);
+        }
+    }
+
+    // Chunk id
+    private int id() throws IOException
+    {
+        need(4);
+        return buffer.getInt();
+    }
+
+    // Unsigned 32 bit size
+    private long long32() throws IOException
+    {
+        need(4);
+        return buffer.getInt() & 0xffffffffL;
+    }
+
+    // Skip bytes
+    private void skip(long n) throws IOException
+    {
+        while (n > 0)
+        {
+            if (!buffer.hasRemaining())
+                fill();
+
+            int k = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + k);
+            n -= k;
+        }
+    }
+
+    // Need bytes in the buffer
+    private void need(int n) throws IOException
+    {
+        while (buffer.remaining() < n)
+            fill();
+    }
+
+    // Fill, keeping what hasn't been read
+    private void fill() throws IOException
+    {
+        buffer.compact();
+        int n = channel.read(buffer);
+        buffer.flip();
+
+        if (n < 0)
+            throw new IOException("Short file");
+    }
+}
@@ -0,0 +1,170 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// WavWriter
+//
+// Streams interleaved float frames to a WAV file, as 16 bit or 32
+// bit float, through a fixed direct buffer. The sizes in the header
+// are written when the file is closed, so only the buffer is held in
+// memory however long the file is.
+public class WavWriter implements Closeable
+{
+    private static final int HEADER = 44;
+    private static final int SIZE = 65536;
+
+    // Format tags
+    private static final short PCM = 1;
+    private static final short IEEE_FLOAT = 3;
+
+    private static final float SCALE = 32768.0f;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private final int rate;
+    private final int channels;
+    private final boolean floating;
+
+    private long bytes;
+
+    // WavWriter
+    public WavWriter(File file, int rate, int channels, boolean floating)
+        throws IOException
+    {
+        this.rate = rate;
+        this.channels = channels;
+        this.floating = floating;
+
+        channel = new FileOutputStream(file).getChannel();
+        buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Placeholder header, the sizes are filled in on close
+        header(buffer, 0);
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    // Write frames of interleaved samples
+    protected void write(float samples[], int frames) throws IOException
+    {
+        int n = frames * channels;
+
+        for (int i = 0; i < n; i++)
+        {
+            if (buffer.remaining() < 4)
+                flush();
+
+            if (floating)
+                buffer.putFloat(samples[i]);
+
+            else
+            {
+                int x = Math.round(samples[i] * SCALE);
+                buffer.putShort((short) Math.max(Math.min(x, Short.MAX_VALUE),
+                                                 Short.MIN_VALUE));
+            }
+        }
+    }
+
+    // Get frames written so far
+    protected long getFrames()
+    {
+        return (bytes + buffer.position()) / (channels * sampleSize());
+    }
+
+    // Close, writing the sizes into the header
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+
+            ByteBuffer b =
+                ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header(b, bytes);
+            b.flip();
+
+            long position = 0;
+            while (b.hasRemaining())
+                position += channel.write(b, position);
+        }
+
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    // Flush
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        bytes += buffer.remaining();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    // Sample size in bytes
+    private int sampleSize()
+    {
+        return floating? 4: 2;
+    }
+
+    // Header, RIFF, fmt and data chunk headers for data bytes
+    private void header(ByteBuffer b, long data)
+    {
+        int size = sampleSize();
+
+        b.put(new byte[] {'R', 'I', 'F', 'F'});
+        b.putInt((int) (data + HEADER - 8));
+        b.put(new byte[] {'W', 'A', 'V', 'E'});
+
+        b.put(new byte[] {'f', 'm', 't', ' '});
+        b.putInt(16);
+        b.putShort(floating? IEEE_FLOAT: PCM);
+        b.putShort((short) channels);
+        b.putInt(rate);
+        b.putInt(rate * channels * size);
+        b.putShort((short) (channels * size));
+        b.putShort((short) (size * 8));
+
+        b.put(new byte[] {'d', 'a', 't', 'a'});
+        b.putInt((int) data);
+    }
+}
@@ -0,0 +1,153 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Wavetable
+//
+// Band limited wavetables, one per octave. Table k contains the
+// first HARMONICS >> k harmonics, so a table can be chosen that has
+// no harmonics above the Nyquist frequency for a given fundamental.
+// Tables are built by additive synthesis, using the sine table, on
+// first use, which should be off the audio thread.
+public class Wavetable
+{
+    protected static final int SINE = 0;
+    protected static final int SQUARE = 1;
+    protected static final int SAWTOOTH = 2;
+    protected static final int TRIANGLE = 3;
+    protected static final int PULSE = 4;
+
+    protected static final int WAVEFORMS = 5;
+
+    protected static final int OCTAVES = 11;
+    protected static final int HARMONICS = 1 << (OCTAVES - 1);
+
+    // Pulse duty cycle
+    protected static final double DUTY = 0.25;
+
+    private static final int SIZE = Oscillator.SIZE;
+    private static final int MASK = SIZE - 1;
+
+    private static final float TABLES[][][] = new float[WAVEFORMS][][];
+
+    // Get tables, building them if needed
+    protected static synchronized float[][] getTables(int waveform)
+    {
+        if (TABLES[waveform] == null)
+            TABLES[waveform] = build(waveform);
+
+        return TABLES[waveform];
+    }
+
+    // Have tables, true if they have been built
+    protected static synchronized boolean hasTables(int waveform)
+    {
+        return TABLES[waveform] != null;
+    }
+
+    // Get table for a fundamental frequency, or null if the tables
+    // have not been built
+    protected static float[] getTable(int waveform, double f, double rate)
+    {
+        float tables[][] = TABLES[waveform];
+        if (tables == null)
+            return null;
+
+        return tables[octave(f, rate)];
+    }
+
+    // Octave, the first table whose highest harmonic is below Nyquist
+    protected static int octave(double f, double rate)
+    {
+        double ratio = f * HARMONICS * 2.0 / rate;
+        if (ratio < 1.0)
+            return 0;
+
+        int k = Math.getExponent(ratio) + 1;
+        return Math.min(k, OCTAVES - 1);
+    }
+
+    // Build
+    private static float[][] build(int waveform)
+    {
+        float tables[][] = new float[OCTAVES][];
+
+        if (waveform == SINE)
+        {
+            for (int k = 0; k < OCTAVES; k++)
+                tables[k] = Oscillator.SINE;
+
+            return tables;
+        }
+
+        for (int k = 0; k < OCTAVES; k++)
+        {
+            int harmonics = HARMONICS >> k;
+            float table[] = new float[SIZE + 1];
+
+            for (int h = 1; h <= harmonics; h++)
+            {
+                double a = amplitude(waveform, h);
+                if (a == 0.0)
+                    continue;
+
+                // Pulse is a cosine series
+                int offset = (waveform == PULSE)? SIZE / 4: 0;
+
+                for (int i = 0; i < SIZE; i++)
+                    table[i] += a * Oscillator.SINE[(h * i + offset) & MASK];
+            }
+
+            // Guard point for interpolation
+            table[SIZE] = table[0];
+            tables[k] = table;
+        }
+
+        return tables;
+    }
+
+    // Amplitude of harmonic h
+    private static double amplitude(int waveform, int h)
+    {
+        switch (waveform)
+        {
+        case SQUARE:
+            return (h % 2 == 1)? 4.0 / (Math.PI * h): 0.0;
+
+        case SAWTOOTH:
+            return ((h % 2 == 1)? 2.0: -2.0) / (Math.PI * h);
+
+        case TRIANGLE:
+            if (h % 2 == 0)
+                return 0.0;
+            return ((h % 4 == 1)? 8.0: -8.0) / (Math.PI * Math.PI * h * h);
+
+        case PULSE:
+            return 2.0 * Math.sin(Math.PI * h * DUTY) / (Math.PI * h);
+
+        default:
+            return (h == 1)? 1.0: 0.0;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+////////////////////////////////////////////////////////////////////////////////
+//
+//  Signal generator - An Android Signal generator written in Java.
+//
+//  Copyright (C) 2013	Bill Farmer
+//
+//  This program is free software: you can redistribute it and/or modify
+//  it under the terms of the GNU General Public License as published by
+//  the Free Software Foundation, either version 3 of the License, or
+//  (at your option) any later version.
+//
+//  This program is distributed in the hope that it will be useful,
+//  but WITHOUT ANY WARRANTY; without even the implied warranty of
+//  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//  GNU General Public License for more details.
+//
+//  You should have received a copy of the GNU General Public License
+//  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+//
+//  Bill Farmer	 william j farmer [at] yahoo [dot] co [dot] uk.
+//
+///////////////////////////////////////////////////////////////////////////////
+
+package org.billthefarmer.siggen;
+
+// Xorshift
+//
+// Marsaglia 32 bit xorshift generator. Unlike java.util.Random it
+// has no locking or atomic updates, so it is cheap enough to call
+// per sample on the audio thread.
+public class Xorshift
+{
+    private static final float SCALE = 1.0f / (1 << 24);
+
+    private int state;
+
+    // Xorshift
+    public Xorshift(int seed)
+    {
+        state = (seed != 0) ? seed : 0x9e3779b9;
+    }
+
+    // Next
+    protected int next()
+    {
+        int x = state;
+
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+
+        state = x;
+        return x;
+    }
+
+    // Uniform in [0, 1)
+    protected float uniform()
+    {
+        return (next() >>> 8) * SCALE;
+    }
+
+    // Uniform in [-1, 1)
+    protected float bipolar()
+    {
+        return (next() >> 8) * SCALE * 2.0f;
+    }
+
+    // Fill a buffer with values uniform in [-gain, gain), the same
+    // sequence as bipolar(), with the state held in a local so the
+    // loop doesn't store and reload it for every sample
+    protected void bipolar(float buffer[], int n, float gain)
+    {
+        float scale = SCALE * 2.0f * gain;
+        int x = state;
+
+        for (int i = 0; i < n; i++)
+        {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+
+            buffer[i] = (x >> 8) * scale;
+        }
+
+        state = x;
+    }
+}